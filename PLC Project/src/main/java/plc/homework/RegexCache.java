@@ -0,0 +1,205 @@
+package plc.homework;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, thread-safe memo of {@code pattern.matcher(input).matches()}
+ * results, for inputs validated against the {@link Regex} patterns over and
+ * over again. A repeated validation is a hash lookup instead of running the
+ * regex.
+ *
+ * Entries are keyed by the pattern (by identity, like {@link Pattern} itself)
+ * and the input, and spread over independently locked stripes, each an LRU
+ * {@link LinkedHashMap} holding an equal share of the maximum size (the
+ * first few stripes hold one more when it doesn't divide evenly). The regex
+ * is run outside of any lock, so a slow match never blocks other lookups.
+ * Entries can optionally expire a fixed time after they were added.
+ *
+ * Hits, misses and evictions are counted for sizing the cache; see
+ * {@link #hitRate()}.
+ */
+public final class RegexCache {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache of at most maxSize entries which never expire.
+     */
+    public RegexCache(int maxSize) {
+        this(maxSize, 0);
+    }
+
+    /**
+     * Creates a cache of at most maxSize entries which expire after the ttl.
+     */
+    public RegexCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl.toNanos());
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("The ttl must be positive.");
+        }
+    }
+
+    private RegexCache(int maxSize, long ttlNanos) {
+        if (maxSize < STRIPES) {
+            throw new IllegalArgumentException("The maximum size must be at least " + STRIPES + ".");
+        }
+        this.ttlNanos = ttlNanos;
+        for (int i = 0; i < STRIPES; i++) {
+            //spread the remainder so the stripes add up to exactly maxSize
+            stripes[i] = new Stripe(maxSize / STRIPES + (i < maxSize % STRIPES ? 1 : 0), evictions);
+        }
+    }
+
+    /**
+     * Returns true if the pattern matches the whole input, using the cached
+     * result if there is one.
+     */
+    public boolean matches(Pattern pattern, String input) {
+        Key key = new Key(pattern, input);
+        //the top four bits pick one of the 16 stripes
+        Stripe stripe = stripes[key.hash >>> 28];
+        Result result;
+        synchronized (stripe) {
+            result = stripe.get(key);
+            if (result != null && ttlNanos != 0 && System.nanoTime() - result.expires > 0) {
+                stripe.remove(key);
+                result = null;
+            }
+        }
+        if (result != null) {
+            hits.increment();
+            return result.matches;
+        }
+        misses.increment();
+        boolean matches = pattern.matcher(input).matches();
+        Result computed = new Result(matches, ttlNanos != 0 ? System.nanoTime() + ttlNanos : 0);
+        synchronized (stripe) {
+            stripe.put(key, computed);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the number of entries, including any which have expired but
+     * haven't been looked up since.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries removed to stay within the maximum size.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups which were hits, or 0 if there have
+     * been none.
+     */
+    public double hitRate() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static final class Key {
+
+        private final Pattern pattern;
+        private final String input;
+        private final int hash;
+
+        private Key(Pattern pattern, String input) {
+            this.pattern = pattern;
+            this.input = input;
+            int hash = 31 * System.identityHashCode(pattern) + input.hashCode();
+            //spread the bits, since the top bits pick the stripe
+            this.hash = hash * 0x9E3779B9;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && pattern == ((Key) obj).pattern && input.equals(((Key) obj).input);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static final class Result {
+
+        private final boolean matches;
+        private final long expires;
+
+        private Result(boolean matches, long expires) {
+            this.matches = matches;
+            this.expires = expires;
+        }
+
+    }
+
+    /**
+     * One stripe of the cache, in access order so the eldest entry is the
+     * least recently used. Guarded by its own monitor.
+     */
+    private static final class Stripe extends LinkedHashMap<Key, Result> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        private Stripe(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,636 @@
+package plc.homework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies an input against several {@link Pattern}s at once, returning the
+ * set of patterns which match the whole input (as with
+ * {@link java.util.regex.Matcher#matches()}) as a bitmask.
+ *
+ * The patterns are compiled into a single DFA, so classifying an input is one
+ * scan over its code points with a table lookup per code point, no matter how
+ * many patterns there are, and allocates nothing. Scanning stops early once no
+ * pattern can match.
+ *
+ * Only the regular subset of the pattern syntax is supported: literals,
+ * character classes (including ranges, negation and {@code \d \w \s}),
+ * {@code .}, groups, alternation, the greedy and lazy quantifiers, and the
+ * {@code ^} and {@code $} anchors. Anything whose meaning isn't a regular
+ * language, such as possessive quantifiers, lookaround, backreferences or
+ * flags, is rejected with an {@link IllegalArgumentException}.
+ */
+public final class RegexClassifier {
+
+    public static final int EMAIL = 1;
+    public static final int EVEN_STRINGS = 1 << 1;
+    public static final int INTEGER_LIST = 1 << 2;
+    public static final int NUMBER = 1 << 3;
+    public static final int STRING = 1 << 4;
+
+    /**
+     * The patterns of {@link Regex}, using the bits above.
+     */
+    public static final RegexClassifier REGEX = of(Regex.EMAIL, Regex.EVEN_STRINGS, Regex.INTEGER_LIST,
+            Regex.NUMBER, Regex.STRING);
+
+    private static final int MAX_STATES = 1 << 14;
+
+    //the code point classes, each starting at a boundary
+    private final int[] boundaries;
+    private final int[] asciiClasses = new int[128];
+    private final int classes;
+    //transitions[state * classes + class], with state 0 being dead
+    private final int[] transitions;
+    private final int[] accepts;
+    private final int start;
+
+    private RegexClassifier(int[] boundaries, int[] transitions, int[] accepts, int start) {
+        this.boundaries = boundaries;
+        this.classes = boundaries.length;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.start = start;
+        for (int c = 0; c < asciiClasses.length; c++) {
+            asciiClasses[c] = classOf(c);
+        }
+    }
+
+    /**
+     * Compiles the patterns into a classifier, where pattern i is reported as
+     * bit i of the result. At most 32 patterns are supported.
+     */
+    public static RegexClassifier of(Pattern... patterns) {
+        if (patterns.length > 32) {
+            throw new IllegalArgumentException("At most 32 patterns are supported.");
+        }
+        Nfa nfa = new Nfa();
+        int[] starts = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].flags() != 0) {
+                throw new IllegalArgumentException("Flags are not supported: " + patterns[i]);
+            }
+            Node node = new Parser(patterns[i].pattern()).parse();
+            int accept = nfa.state();
+            nfa.accept[accept] = i;
+            starts[i] = node.compile(nfa, accept);
+        }
+        nfa.checkEndAnchors();
+        return nfa.determinize(starts);
+    }
+
+    /**
+     * Returns the patterns matching the whole input, as a bitmask.
+     */
+    public int classify(CharSequence input) {
+        int state = start;
+        for (int i = 0; i < input.length(); ) {
+            int c = Character.codePointAt(input, i);
+            i += Character.charCount(c);
+            state = transitions[state * classes + (c < 128 ? asciiClasses[c] : classOf(c))];
+            if (state == 0) {
+                return 0;
+            }
+        }
+        return accepts[state];
+    }
+
+    public boolean matches(CharSequence input, int pattern) {
+        return (classify(input) & pattern) != 0;
+    }
+
+    private int classOf(int c) {
+        int i = Arrays.binarySearch(boundaries, c);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * A regex syntax tree, compiled into NFA states which lead to next.
+     */
+    private interface Node {
+
+        /**
+         * Adds states matching this node followed by next, returning the
+         * first of them.
+         */
+        int compile(Nfa nfa, int next);
+
+    }
+
+    private static final class Chars implements Node {
+
+        //sorted, disjoint [start, end] pairs of code points
+        private final int[] ranges;
+
+        private Chars(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        public int compile(Nfa nfa, int next) {
+            int state = nfa.state();
+            nfa.ranges[state] = ranges;
+            nfa.addEdge(state, next);
+            return state;
+        }
+
+    }
+
+    private static final class Sequence implements Node {
+
+        private final List<Node> nodes;
+
+        private Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int compile(Nfa nfa, int next) {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                next = nodes.get(i).compile(nfa, next);
+            }
+            return next;
+        }
+
+    }
+
+    private static final class Alternation implements Node {
+
+        private final List<Node> nodes;
+
+        private Alternation(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int compile(Nfa nfa, int next) {
+            int state = nfa.state();
+            for (Node node : nodes) {
+                nfa.addEdge(state, node.compile(nfa, next));
+            }
+            return state;
+        }
+
+    }
+
+    private static final class Repeat implements Node {
+
+        private final Node node;
+        private final int min;
+        private final int max; //-1 if unbounded
+
+        private Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public int compile(Nfa nfa, int next) {
+            int state = next;
+            if (max == -1) {
+                //loop ::= node loop | next
+                state = nfa.state();
+                nfa.addEdge(state, node.compile(nfa, state));
+                nfa.addEdge(state, next);
+            } else {
+                for (int i = min; i < max; i++) {
+                    int optional = nfa.state();
+                    nfa.addEdge(optional, node.compile(nfa, state));
+                    nfa.addEdge(optional, next);
+                    state = optional;
+                }
+            }
+            for (int i = 0; i < min; i++) {
+                state = node.compile(nfa, state);
+            }
+            return state;
+        }
+
+    }
+
+    private static final class Anchor implements Node {
+
+        private final boolean start;
+
+        private Anchor(boolean start) {
+            this.start = start;
+        }
+
+        @Override
+        public int compile(Nfa nfa, int next) {
+            int state = nfa.state();
+            nfa.anchor[state] = start ? Nfa.START : Nfa.END;
+            nfa.addEdge(state, next);
+            return state;
+        }
+
+    }
+
+    private static final class Parser {
+
+        private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+        private static final int[] ANY = {0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, 0x84, 0x86, 0x2027, 0x202A, MAX_CODE_POINT};
+        private static final int[] DIGIT = {'0', '9'};
+        private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+        private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+        private final String pattern;
+        private int index = 0;
+
+        private Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private Node parse() {
+            Node node = parseAlternation();
+            if (index < pattern.length()) {
+                throw error("Unmatched )");
+            }
+            return node;
+        }
+
+        private Node parseAlternation() {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseSequence());
+            while (peek('|')) {
+                index++;
+                nodes.add(parseSequence());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+        }
+
+        private Node parseSequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (index < pattern.length() && !peek('|') && !peek(')')) {
+                nodes.add(parseQuantifier(parseAtom()));
+            }
+            return new Sequence(nodes);
+        }
+
+        private Node parseAtom() {
+            int c = pattern.codePointAt(index);
+            index += Character.charCount(c);
+            switch (c) {
+                case '(':
+                    if (peek('?')) {
+                        if (!pattern.startsWith("?:", index)) {
+                            throw error("Only (?: groups are supported");
+                        }
+                        index += 2;
+                    }
+                    Node group = parseAlternation();
+                    if (!peek(')')) {
+                        throw error("Unclosed group");
+                    }
+                    index++;
+                    return group;
+                case '^':
+                    return new Anchor(true);
+                case '$':
+                    return new Anchor(false);
+                case '.':
+                    return new Chars(ANY);
+                case '[':
+                    return new Chars(parseClass());
+                case '\\':
+                    return new Chars(parseEscape());
+                case '*': case '+': case '?': case '{':
+                    throw error("Dangling quantifier");
+                default:
+                    return new Chars(new int[] {c, c});
+            }
+        }
+
+        private Node parseQuantifier(Node node) {
+            if (index == pattern.length()) {
+                return node;
+            }
+            int min;
+            int max;
+            switch (pattern.charAt(index)) {
+                case '*': min = 0; max = -1; index++; break;
+                case '+': min = 1; max = -1; index++; break;
+                case '?': min = 0; max = 1; index++; break;
+                case '{':
+                    index++;
+                    min = parseInt();
+                    max = min;
+                    if (peek(',')) {
+                        index++;
+                        max = peek('}') ? -1 : parseInt();
+                    }
+                    if (!peek('}') || (max != -1 && max < min)) {
+                        throw error("Invalid repetition");
+                    }
+                    index++;
+                    break;
+                default:
+                    return node;
+            }
+            if (peek('+')) {
+                throw error("Possessive quantifiers are not supported");
+            } else if (peek('?')) {
+                index++; //lazy quantifiers match the same inputs
+            }
+            if (index < pattern.length() && "*+?{".indexOf(pattern.charAt(index)) >= 0) {
+                throw error("Dangling quantifier");
+            }
+            return new Repeat(node, min, max);
+        }
+
+        private int parseInt() {
+            int start = index;
+            while (index < pattern.length() && Character.isDigit(pattern.charAt(index)) && index - start < 4) {
+                index++;
+            }
+            if (index == start) {
+                throw error("Expected a number");
+            }
+            return Integer.parseInt(pattern.substring(start, index));
+        }
+
+        private int[] parseClass() {
+            boolean negated = peek('^');
+            if (negated) {
+                index++;
+            }
+            List<int[]> ranges = new ArrayList<>();
+            while (!peek(']')) {
+                if (index == pattern.length()) {
+                    throw error("Unclosed character class");
+                } else if (peek('[') || pattern.startsWith("&&", index)) {
+                    throw error("Nested classes are not supported");
+                }
+                int[] item = parseClassItem();
+                if (item.length == 2 && item[0] == item[1] && peek('-')
+                        && index + 1 < pattern.length() && pattern.charAt(index + 1) != ']') {
+                    index++;
+                    int[] end = parseClassItem();
+                    if (end.length != 2 || end[0] != end[1] || end[0] < item[0]) {
+                        throw error("Invalid range");
+                    }
+                    item = new int[] {item[0], end[0]};
+                }
+                ranges.add(item);
+            }
+            index++;
+            int[] union = union(ranges);
+            return negated ? complement(union) : union;
+        }
+
+        private int[] parseClassItem() {
+            int c = pattern.codePointAt(index);
+            index += Character.charCount(c);
+            return c == '\\' ? parseEscape() : new int[] {c, c};
+        }
+
+        private int[] parseEscape() {
+            if (index == pattern.length()) {
+                throw error("Trailing backslash");
+            }
+            int c = pattern.codePointAt(index);
+            index += Character.charCount(c);
+            switch (c) {
+                case 'd': return DIGIT;
+                case 'D': return complement(DIGIT);
+                case 'w': return WORD;
+                case 'W': return complement(WORD);
+                case 's': return SPACE;
+                case 'S': return complement(SPACE);
+                case 't': return new int[] {'\t', '\t'};
+                case 'n': return new int[] {'\n', '\n'};
+                case 'r': return new int[] {'\r', '\r'};
+                case 'f': return new int[] {'\f', '\f'};
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("Unsupported escape \\" + new String(Character.toChars(c)));
+                    }
+                    return new int[] {c, c};
+            }
+        }
+
+        private static int[] union(List<int[]> items) {
+            List<int[]> ranges = new ArrayList<>();
+            for (int[] item : items) {
+                for (int i = 0; i < item.length; i += 2) {
+                    ranges.add(new int[] {item[i], item[i + 1]});
+                }
+            }
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] merged = new int[ranges.size() * 2];
+            int length = 0;
+            for (int[] range : ranges) {
+                if (length > 0 && range[0] <= merged[length - 1] + 1) {
+                    merged[length - 1] = Math.max(merged[length - 1], range[1]);
+                } else {
+                    merged[length++] = range[0];
+                    merged[length++] = range[1];
+                }
+            }
+            return Arrays.copyOf(merged, length);
+        }
+
+        private static int[] complement(int[] ranges) {
+            int[] complement = new int[ranges.length + 2];
+            int length = 0;
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    complement[length++] = next;
+                    complement[length++] = ranges[i] - 1;
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= MAX_CODE_POINT) {
+                complement[length++] = next;
+                complement[length++] = MAX_CODE_POINT;
+            }
+            return Arrays.copyOf(complement, length);
+        }
+
+        private boolean peek(char c) {
+            return index < pattern.length() && pattern.charAt(index) == c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at index " + index + " of " + pattern);
+        }
+
+    }
+
+    /**
+     * A Thompson NFA, where each state either consumes a code point in its
+     * ranges or has epsilon edges (guarded by an anchor, if any).
+     */
+    private static final class Nfa {
+
+        private static final byte START = 1;
+        private static final byte END = 2;
+
+        private int size = 0;
+        private int[][] ranges = new int[64][];
+        private int[][] edges = new int[64][];
+        private byte[] anchor = new byte[64];
+        private int[] accept = new int[64];
+
+        private int state() {
+            if (size == ranges.length) {
+                if (size == MAX_STATES * 4) {
+                    throw new IllegalArgumentException("Patterns are too large.");
+                }
+                ranges = Arrays.copyOf(ranges, size * 2);
+                edges = Arrays.copyOf(edges, size * 2);
+                anchor = Arrays.copyOf(anchor, size * 2);
+                accept = Arrays.copyOf(accept, size * 2);
+            }
+            edges[size] = new int[0];
+            accept[size] = -1;
+            return size++;
+        }
+
+        private void addEdge(int from, int to) {
+            int[] out = Arrays.copyOf(edges[from], edges[from].length + 1);
+            out[out.length - 1] = to;
+            edges[from] = out;
+        }
+
+        /**
+         * Rejects a {@code $} which could be followed by more input. Otherwise
+         * {@code $} can only hold at the end (since the whole input must
+         * match), so it is just an epsilon edge; this excludes Java's
+         * {@code $} before a final line terminator, which would need input
+         * after it to be consumed.
+         */
+        private void checkEndAnchors() {
+            for (int state = 0; state < size; state++) {
+                if (anchor[state] == END) {
+                    BitSet closure = new BitSet();
+                    closure(closure, state, true);
+                    for (int reached = closure.nextSetBit(0); reached >= 0; reached = closure.nextSetBit(reached + 1)) {
+                        if (ranges[reached] != null) {
+                            throw new IllegalArgumentException("$ followed by more input is not supported.");
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the states reachable from state by epsilon edges to the set,
+         * where {@code ^} only holds at the start of the input.
+         */
+        private void closure(BitSet set, int state, boolean atStart) {
+            //iterative, since long repetitions make long chains of edges
+            int[] stack = {state};
+            int length = 1;
+            while (length > 0) {
+                int current = stack[--length];
+                if (set.get(current)) {
+                    continue;
+                }
+                set.set(current);
+                if (ranges[current] != null || (anchor[current] == START && !atStart)) {
+                    continue;
+                }
+                for (int next : edges[current]) {
+                    if (length == stack.length) {
+                        stack = Arrays.copyOf(stack, length * 2);
+                    }
+                    stack[length++] = next;
+                }
+            }
+        }
+
+        private RegexClassifier determinize(int[] starts) {
+            int[] boundaries = boundaries();
+            int classes = boundaries.length;
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<BitSet> states = new ArrayList<>();
+            states.add(new BitSet()); //dead
+            ids.put(states.get(0), 0);
+            BitSet initial = new BitSet();
+            for (int start : starts) {
+                closure(initial, start, true);
+            }
+            int start = id(initial, ids, states);
+            int[] transitions = new int[64 * classes];
+            for (int i = 0; i < states.size(); i++) {
+                BitSet set = states.get(i);
+                for (int c = 0; c < classes; c++) {
+                    BitSet next = new BitSet();
+                    for (int state = set.nextSetBit(0); state >= 0; state = set.nextSetBit(state + 1)) {
+                        if (ranges[state] != null && contains(ranges[state], boundaries[c])) {
+                            closure(next, edges[state][0], false);
+                        }
+                    }
+                    int id = id(next, ids, states);
+                    if ((i + 1) * classes > transitions.length) {
+                        transitions = Arrays.copyOf(transitions, transitions.length * 2);
+                    }
+                    transitions[i * classes + c] = id;
+                }
+            }
+            int[] accepts = new int[states.size()];
+            for (int i = 0; i < states.size(); i++) {
+                BitSet set = states.get(i);
+                for (int state = set.nextSetBit(0); state >= 0; state = set.nextSetBit(state + 1)) {
+                    if (accept[state] >= 0) {
+                        accepts[i] |= 1 << accept[state];
+                    }
+                }
+            }
+            return new RegexClassifier(boundaries, Arrays.copyOf(transitions, states.size() * classes), accepts, start);
+        }
+
+        private static int id(BitSet set, Map<BitSet, Integer> ids, List<BitSet> states) {
+            Integer id = ids.get(set);
+            if (id == null) {
+                if (states.size() == MAX_STATES) {
+                    throw new IllegalArgumentException("Patterns need too many DFA states.");
+                }
+                id = states.size();
+                ids.put(set, id);
+                states.add(set);
+            }
+            return id;
+        }
+
+        /**
+         * Returns the starts of the code point classes: maximal ranges of
+         * code points which every state either fully contains or excludes.
+         */
+        private int[] boundaries() {
+            TreeSet<Integer> boundaries = new TreeSet<>();
+            boundaries.add(0);
+            for (int state = 0; state < size; state++) {
+                if (ranges[state] != null) {
+                    for (int i = 0; i < ranges[state].length; i += 2) {
+                        boundaries.add(ranges[state][i]);
+                        if (ranges[state][i + 1] < Character.MAX_CODE_POINT) {
+                            boundaries.add(ranges[state][i + 1] + 1);
+                        }
+                    }
+                }
+            }
+            return boundaries.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static boolean contains(int[] ranges, int c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
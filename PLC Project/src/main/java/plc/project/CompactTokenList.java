@@ -0,0 +1,212 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * An immutable list of the tokens of a source, compressed to a few bytes per
+ * token for lists kept in memory for a long time. Types are packed two to a
+ * byte, and each token is stored as a varint gap from the end of the previous
+ * token followed by a varint length; literals are not stored at all, since
+ * every token's literal is its text in the source.
+ *
+ * Every 64 tokens there is a checkpoint of the position in the encoded data
+ * and the end of the previous token, so {@link #get(int)} decodes at most 63
+ * tokens before materializing the requested one. Iteration decodes forward
+ * instead, one token at a time. Materialized tokens are equal to the lexed
+ * ones, but {@link Token#getByteIndex()} is not kept.
+ */
+public final class CompactTokenList extends AbstractList<Token> implements RandomAccess {
+
+    private static final int CHECKPOINT_SHIFT = 6;
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private final int size;
+    private final byte[] types;
+    private final byte[] data;
+    private final int[] positions;
+    private final int[] ends;
+
+    private CompactTokenList(CharSequence source, int size, byte[] types, byte[] data, int[] positions, int[] ends) {
+        this.source = source;
+        this.size = size;
+        this.types = types;
+        this.data = data;
+        this.positions = positions;
+        this.ends = ends;
+    }
+
+    /**
+     * Compresses tokens lexed from the source, such as the result of
+     * {@link Lexer#lex()}.
+     */
+    public static CompactTokenList of(CharSequence source, List<Token> tokens) {
+        Builder builder = new Builder();
+        tokens.forEach(builder);
+        return builder.build(source);
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        int checkpoint = index >>> CHECKPOINT_SHIFT;
+        int position = positions[checkpoint];
+        int end = ends[checkpoint];
+        int start = end;
+        for (int i = checkpoint << CHECKPOINT_SHIFT; i <= index; i++) {
+            long gap = readVarint(data, position);
+            long length = readVarint(data, (int) gap);
+            start = end + (int) (gap >>> 32);
+            end = start + (int) (length >>> 32);
+            position = (int) length;
+        }
+        return token(index, start, end);
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Itr();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Token> action) {
+        Itr iterator = new Itr();
+        while (iterator.hasNext()) {
+            action.accept(iterator.next());
+        }
+    }
+
+    private Token token(int index, int start, int end) {
+        Token.Type type = TYPES[types[index >>> 1] >>> ((index & 1) << 2) & 0xF];
+        return new Token(type, source.subSequence(start, end).toString(), start);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded tokens and checkpoints,
+     * not counting the source.
+     */
+    public int getEncodedSize() {
+        return types.length + data.length + 4 * (positions.length + ends.length);
+    }
+
+    /**
+     * Reads the varint at position, returning the value in the high 32 bits
+     * and the position after it in the low 32 bits.
+     */
+    private static long readVarint(byte[] data, int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (long) value << 32 | position;
+            }
+        }
+    }
+
+    /**
+     * Decodes the tokens in order from the start, without going back to a
+     * checkpoint for each one.
+     */
+    private final class Itr implements Iterator<Token> {
+
+        private int index = 0;
+        private int position = 0;
+        private int end = 0;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public Token next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            long gap = readVarint(data, position);
+            long length = readVarint(data, (int) gap);
+            int start = end + (int) (gap >>> 32);
+            end = start + (int) (length >>> 32);
+            position = (int) length;
+            return token(index++, start, end);
+        }
+
+    }
+
+    /**
+     * Collects tokens as they are lexed, which must be in order and not
+     * overlap, for example with {@link Lexer#lex(Consumer)}.
+     */
+    public static final class Builder implements Consumer<Token> {
+
+        private int size = 0;
+        private int end = 0;
+        private byte[] types = new byte[16];
+        private byte[] data = new byte[64];
+        private int length = 0;
+        private int[] positions = new int[4];
+        private int[] ends = new int[4];
+
+        @Override
+        public void accept(Token token) {
+            int gap = token.getIndex() - end;
+            if (gap < 0) {
+                throw new IllegalArgumentException("Tokens must be in order: " + token);
+            }
+            if ((size & ((1 << CHECKPOINT_SHIFT) - 1)) == 0) {
+                int checkpoint = size >>> CHECKPOINT_SHIFT;
+                if (checkpoint == positions.length) {
+                    positions = Arrays.copyOf(positions, checkpoint * 2);
+                    ends = Arrays.copyOf(ends, checkpoint * 2);
+                }
+                positions[checkpoint] = length;
+                ends[checkpoint] = end;
+            }
+            if (size >>> 1 == types.length) {
+                types = Arrays.copyOf(types, types.length * 2);
+            }
+            types[size >>> 1] |= token.getType().ordinal() << ((size & 1) << 2);
+            writeVarint(gap);
+            writeVarint(token.getLiteral().length());
+            end = token.getIndex() + token.getLiteral().length();
+            size++;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        /**
+         * Returns the list of the tokens collected so far, whose literals are
+         * read from the source they were lexed from.
+         */
+        public CompactTokenList build(CharSequence source) {
+            int checkpoints = (size + (1 << CHECKPOINT_SHIFT) - 1) >>> CHECKPOINT_SHIFT;
+            return new CompactTokenList(source, size, Arrays.copyOf(types, (size + 1) >>> 1),
+                    Arrays.copyOf(data, length), Arrays.copyOf(positions, checkpoints), Arrays.copyOf(ends, checkpoints));
+        }
+
+    }
+
+}
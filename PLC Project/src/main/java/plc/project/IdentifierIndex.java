@@ -0,0 +1,177 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * An inverted index from each identifier to the positions (ordinals in the
+ * token list) of the tokens where it occurs, so finding the references to a
+ * symbol costs time proportional to its occurrences rather than to the
+ * number of tokens.
+ *
+ * The index is built by accepting tokens in order, either as they are lexed
+ * (see {@link LexerSpec#withIdentifierIndex(boolean)}) or from an existing
+ * list. Positions are kept as sorted {@code int} arrays, and symbols in a
+ * sorted map for prefix queries. Indexes are not thread-safe.
+ */
+public final class IdentifierIndex implements Consumer<Token> {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final TreeMap<String, Postings> symbols = new TreeMap<>();
+    private int tokenCount = 0;
+
+    public static IdentifierIndex of(Iterable<Token> tokens) {
+        IdentifierIndex index = new IdentifierIndex();
+        tokens.forEach(index);
+        return index;
+    }
+
+    /**
+     * Adds the next token of the list, recording its position if it is an
+     * identifier.
+     */
+    @Override
+    public void accept(Token token) {
+        if (token.getType() == Token.Type.IDENTIFIER) {
+            symbols.computeIfAbsent(token.getLiteral(), s -> new Postings()).add(tokenCount);
+        }
+        tokenCount++;
+    }
+
+    /**
+     * Returns the number of tokens (of any type) covered by the index.
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    /**
+     * Returns the sorted positions of the symbol's occurrences, which is empty
+     * if it doesn't occur.
+     */
+    public int[] lookup(String symbol) {
+        Postings postings = symbols.get(symbol);
+        return postings != null ? postings.toArray() : EMPTY;
+    }
+
+    /**
+     * Returns the positions of every symbol starting with the prefix, ordered
+     * by symbol.
+     */
+    public SortedMap<String, int[]> prefix(String prefix) {
+        SortedMap<String, int[]> result = new TreeMap<>();
+        for (Map.Entry<String, Postings> entry : symbols.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    /**
+     * Adds the occurrences of other, whose positions are shifted by offset.
+     * This combines the indexes of parts of a token list, such as files
+     * lexed separately, where offset is the position of other's first token.
+     */
+    public void merge(IdentifierIndex other, int offset) {
+        for (Map.Entry<String, Postings> entry : other.symbols.entrySet()) {
+            Postings postings = symbols.computeIfAbsent(entry.getKey(), s -> new Postings());
+            postings.set(union(postings.toArray(), entry.getValue().toArray(), offset));
+        }
+        tokenCount = Math.max(tokenCount, offset + other.tokenCount);
+    }
+
+    /**
+     * Updates the index after re-lexing part of the file: the tokens in
+     * [from, from + removed) were replaced by the tokens indexed by
+     * replacement, whose positions are relative to from. Positions after the
+     * replaced range are shifted by the change in the number of tokens.
+     */
+    public void update(int from, int removed, IdentifierIndex replacement) {
+        if (from < 0 || removed < 0 || from + removed > tokenCount) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + removed) + ") of " + tokenCount);
+        }
+        int delta = replacement.tokenCount - removed;
+        for (Map.Entry<String, Postings> entry : replacement.symbols.entrySet()) {
+            symbols.computeIfAbsent(entry.getKey(), s -> new Postings());
+        }
+        symbols.entrySet().removeIf(entry -> {
+            Postings postings = entry.getValue();
+            Postings inserted = replacement.symbols.get(entry.getKey());
+            int[] positions = postings.toArray();
+            int start = lowerBound(positions, from);
+            int end = lowerBound(positions, from + removed);
+            int[] added = inserted != null ? inserted.toArray() : EMPTY;
+            if (start == end && added.length == 0 && (delta == 0 || end == positions.length)) {
+                return false;
+            }
+            int[] updated = new int[start + added.length + positions.length - end];
+            System.arraycopy(positions, 0, updated, 0, start);
+            for (int i = 0; i < added.length; i++) {
+                updated[start + i] = added[i] + from;
+            }
+            for (int i = end; i < positions.length; i++) {
+                updated[start + added.length + i - end] = positions[i] + delta;
+            }
+            postings.set(updated);
+            return updated.length == 0;
+        });
+        tokenCount += delta;
+    }
+
+    private static int lowerBound(int[] positions, int position) {
+        int i = Arrays.binarySearch(positions, position);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static int[] union(int[] a, int[] b, int offset) {
+        int[] union = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int length = 0;
+        while (i < a.length || j < b.length) {
+            int next = j == b.length || i < a.length && a[i] <= b[j] + offset ? a[i++] : b[j++] + offset;
+            if (length == 0 || union[length - 1] != next) {
+                union[length++] = next;
+            }
+        }
+        return Arrays.copyOf(union, length);
+    }
+
+    /**
+     * The positions of one symbol, in a growable sorted array.
+     */
+    private static final class Postings {
+
+        private int[] positions = new int[2];
+        private int size = 0;
+
+        private void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(size * 2, 2));
+            }
+            positions[size++] = position;
+        }
+
+        private void set(int[] positions) {
+            this.positions = positions;
+            this.size = positions.length;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+
+    }
+
+}
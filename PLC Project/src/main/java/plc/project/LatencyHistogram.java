@@ -0,0 +1,170 @@
+package plc.project;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with log-linear buckets:
+ * each power of two is split into 16 linear sub-buckets, so any recorded
+ * value is reported within about 6% of its true value. Recording is a few
+ * atomic adds and never allocates.
+ *
+ * Histograms are safe to record into from any number of threads, and can be
+ * combined with {@link #merge(LatencyHistogram)}. Readers take a
+ * {@link Snapshot}, optionally resetting the histogram at the same time.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        updateMax(value);
+    }
+
+    /**
+     * Adds all values recorded by other into this histogram.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        updateMax(other.max.get());
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, max.get());
+    }
+
+    /**
+     * Returns a snapshot and resets the histogram. Values recorded
+     * concurrently are counted in either this snapshot or the next one.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy, max.getAndSet(0));
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //retry until the max is at least value
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value that falls in the given bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram's counts.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.count = count;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given fraction (between 0 and 1)
+         * of recorded values fall, or 0 if nothing was recorded.
+         */
+        public long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(fraction * count), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getP50() {
+            return getPercentile(0.5);
+        }
+
+        public long getP99() {
+            return getPercentile(0.99);
+        }
+
+        public long getP999() {
+            return getPercentile(0.999);
+        }
+
+        /**
+         * Returns a snapshot with the counts of both snapshots.
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", p50=" + getP50() + "ns, p99=" + getP99() + "ns, p999=" + getP999()
+                    + "ns, max=" + max + "ns";
+        }
+
+    }
+
+}
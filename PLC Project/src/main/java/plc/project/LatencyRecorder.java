@@ -0,0 +1,66 @@
+package plc.project;
+
+/**
+ * Records the latency of {@link Lexer#lex()} into a {@link LatencyHistogram}
+ * for each combination of input size bucket and outcome, so the tail latency
+ * of (say) large inputs that fail can be told apart from small ones that
+ * succeed. A recorder is attached to a spec with
+ * {@link LexerSpec#withLatencyRecorder(LatencyRecorder)} and shared by every
+ * lexer using that spec.
+ *
+ * Size buckets are powers of four starting at 1K characters, so bucket 0 is
+ * inputs under 1K, bucket 1 is under 4K, and so on up to the last bucket
+ * which holds everything of 4M characters or more.
+ */
+public final class LatencyRecorder {
+
+    public enum Outcome {
+        SUCCESS,
+        PARSE_EXCEPTION
+    }
+
+    public static final int SIZE_BUCKETS = 8;
+
+    //values() clones the array, which record() shouldn't allocate for
+    private static final int OUTCOMES = Outcome.values().length;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[SIZE_BUCKETS * OUTCOMES];
+
+    public LatencyRecorder() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int inputLength, Outcome outcome, long nanos) {
+        getHistogram(sizeBucket(inputLength), outcome).record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(int sizeBucket, Outcome outcome) {
+        return histograms[sizeBucket * OUTCOMES + outcome.ordinal()];
+    }
+
+    /**
+     * Adds everything recorded by other into this recorder, such as when
+     * combining per-thread recorders.
+     */
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].merge(other.histograms[i]);
+        }
+    }
+
+    public static int sizeBucket(int inputLength) {
+        //1K = 2^10, and each bucket is two more bits
+        int bits = 32 - Integer.numberOfLeadingZeros(inputLength);
+        return Math.min(Math.max((bits - 9) / 2, 0), SIZE_BUCKETS - 1);
+    }
+
+    /**
+     * Returns the smallest input length in the given bucket.
+     */
+    public static int sizeBucketStart(int sizeBucket) {
+        return sizeBucket == 0 ? 0 : 1 << (8 + 2 * sizeBucket);
+    }
+
+}
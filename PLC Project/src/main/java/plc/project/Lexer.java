@@ -1,7 +1,11 @@
 package plc.project;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The lexer works through three main functions:
@@ -19,10 +23,94 @@ import java.util.List;
  */
 public final class Lexer {
 
+    private final LexerSpec spec;
     private final CharStream chars;
+    private final LineMap lines = new LineMap();
+    private final IdentifierIndex identifiers;
+    private final Trivia trivia;
+    private final long deadline;
+    private int tokens = 0;
+    private int work = 0;
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(LexerSpec.DEFAULT, input);
+    }
+
+    /**
+     * Creates a lexer for UTF-8 encoded input, which is lexed directly on the
+     * bytes through a {@link Utf8CharSequence}. Token indices are char
+     * indices as if the input had been decoded, and {@link
+     * Token#getByteIndex()} is the offset in the bytes.
+     */
+    public Lexer(byte[] input) {
+        this(LexerSpec.DEFAULT, new Utf8CharSequence(input));
+    }
+
+    /**
+     * Same as {@link #Lexer(byte[])} for the remaining bytes of a buffer.
+     */
+    public Lexer(ByteBuffer input) {
+        this(LexerSpec.DEFAULT, new Utf8CharSequence(input));
+    }
+
+    /**
+     * Creates a lexer using a shared spec, such as one with a custom
+     * {@link OperatorTable}.
+     */
+    public Lexer(LexerSpec spec, CharSequence input) {
+        this(spec, input, 0, input.length());
+    }
+
+    /**
+     * Creates a lexer for the characters of input in [start, end), producing
+     * tokens with indices relative to the whole input. Both bounds must be
+     * between tokens, such as at a line ending.
+     */
+    Lexer(LexerSpec spec, CharSequence input, int start, int end) {
+        LexerLimits limits = spec.getLimits();
+        if (end - start > limits.getMaxInputLength()) {
+            throw new LimitExceededException(LimitExceededException.Limit.INPUT_LENGTH,
+                    "Input exceeds the maximum length of " + limits.getMaxInputLength(), start + limits.getMaxInputLength());
+        }
+        this.spec = spec;
+        this.chars = new CharStream(input, start, end);
+        this.deadline = limits.getTimeoutNanos() > 0 ? System.nanoTime() + limits.getTimeoutNanos() : 0;
+        this.identifiers = spec.isIdentifierIndexed() ? new IdentifierIndex() : null;
+        this.trivia = spec.isTriviaPreserved() ? new Trivia() : null;
+    }
+
+    /**
+     * Returns the line starts recorded by {@link #lex()}. If lexing stopped at
+     * a {@link ParseException}, every line up to the exception's index has
+     * been recorded.
+     */
+    public LineMap getLineMap() {
+        return lines;
+    }
+
+    /**
+     * Returns the index of the identifiers lexed so far, if the spec enables
+     * one. Positions are ordinals in the tokens lexed by this lexer; its
+     * {@link #stream()} never splits, so even a parallel stream indexes every
+     * token.
+     */
+    public IdentifierIndex getIdentifierIndex() {
+        if (identifiers == null) {
+            throw new IllegalStateException("The spec does not build an identifier index.");
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns the whitespace skipped so far, if the spec preserves it. As with
+     * {@link #getIdentifierIndex()}, the {@link #stream()} never splits, so
+     * even a parallel stream records all of it.
+     */
+    public Trivia getTrivia() {
+        if (trivia == null) {
+            throw new IllegalStateException("The spec does not preserve trivia.");
+        }
+        return trivia;
     }
 
     /**
@@ -30,21 +118,123 @@ public final class Lexer {
      * whitespace where appropriate.
      */
     public List<Token> lex() {
-        /*
-        * char by char
-        * */
-        //match first char, then match in while until done
         List<Token> tokens = new ArrayList<>();
+        lex(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, passing each token to
+     * the sink instead of collecting them into a list.
+     */
+    public void lex(Consumer<? super Token> sink) {
+        LatencyRecorder recorder = spec.getLatencyRecorder();
+        if (recorder == null) {
+            lexAll(sink);
+            return;
+        }
+        int length = chars.end - chars.index;
+        long start = System.nanoTime();
+        try {
+            lexAll(sink);
+            recorder.record(length, LatencyRecorder.Outcome.SUCCESS, System.nanoTime() - start);
+        } catch (ParseException e) {
+            recorder.record(length, LatencyRecorder.Outcome.PARSE_EXCEPTION, System.nanoTime() - start);
+            throw e;
+        }
+    }
 
+    /**
+     * Lexes the rest of the input into the sink without recording latency.
+     */
+    void lexAll(Consumer<? super Token> sink) {
+        Token token;
+        while ((token = lexNext()) != null) {
+            sink.accept(token);
+        }
+    }
+
+    /**
+     * Returns a lazy stream of the tokens in the input, which lexes each token
+     * as it is pulled. The stream may be made parallel, in which case the
+     * remaining input is split at line endings (see {@link TokenSpliterator}),
+     * unless the spec builds an identifier index, preserves trivia, or limits
+     * the token count or time, which only this lexer can keep track of.
+     */
+    public Stream<Token> stream() {
+        return StreamSupport.stream(new TokenSpliterator(spec, chars.input, this, chars.end), false);
+    }
+
+    /**
+     * Skips whitespace and lexes the next token, returning null at the end of
+     * the input.
+     */
+    Token lexNext() {
+        //match first char, then match in while until done
         while (chars.has(0)){
+            checkLimits();
             if(match("[ \b\n\r\t]")){
                 chars.skip();
+                //a \r followed by \n is recorded once the \n is skipped
+                char skipped = chars.get(-1);
+                boolean lineEnding = skipped == '\n' || skipped == '\r' && (!chars.has(0) || chars.get(0) != '\n');
+                if (lineEnding) {
+                    lines.add(chars.index);
+                }
+                if (trivia != null) {
+                    trivia.add(skipped, lineEnding);
+                }
             }else {
-                tokens.add(lexToken());
+                if (++tokens > spec.getLimits().getMaxTokenCount()) {
+                    throw new LimitExceededException(LimitExceededException.Limit.TOKEN_COUNT,
+                            "Input exceeds the maximum of " + spec.getLimits().getMaxTokenCount() + " tokens", chars.index);
+                }
+                Token token = lexToken();
+                //the loops of lexString, lexIdentifier and lexNumber check as
+                //they go, this catches the others at the same index they would
+                if (token.getLiteral().length() > spec.getLimits().getMaxTokenLength()) {
+                    throw new LimitExceededException(LimitExceededException.Limit.TOKEN_LENGTH,
+                            "Token exceeds the maximum length of " + spec.getLimits().getMaxTokenLength(),
+                            token.getIndex() + spec.getLimits().getMaxTokenLength() + 1);
+                }
+                if (identifiers != null) {
+                    identifiers.accept(token);
+                }
+                if (trivia != null) {
+                    trivia.endRun();
+                }
+                return token;
             }
         }
-        //throw new UnsupportedOperationException();
-        return tokens;
+        if (trivia != null) {
+            trivia.finish();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the input being lexed.
+     */
+    CharSequence input() {
+        return chars.input;
+    }
+
+    /**
+     * Continues lexing at index after a {@link ParseException}, keeping the
+     * deadline and token count, for inputs made of independent parts such as
+     * a {@link SourceBundle}. The index must be between tokens and after the
+     * current position.
+     */
+    void resume(int index) {
+        chars.index = index;
+        chars.skip();
+    }
+
+    /**
+     * Returns the index of the next character to be lexed.
+     */
+    int position() {
+        return chars.index;
     }
 
     /**
@@ -80,7 +270,9 @@ public final class Lexer {
         //need to advance the index, so match to advance the first character
         match("[A-Za-z_]");
         //matching the end until the end
-        while(match("[A-Za-z0-9_-]"));
+        while(match("[A-Za-z0-9_-]")) {
+            checkLimits();
+        }
         return chars.emit(Token.Type.IDENTIFIER);
     }
 
@@ -89,10 +281,14 @@ public final class Lexer {
         //INTEGER, DECIMAL
         //throw new UnsupportedOperationException();
         match("[+\\-]");
-        while(match("[0-9]"));
+        while(match("[0-9]")) {
+            checkLimits();
+        }
         if(match("[.]")){
             if(peek("[0-9]")){
-                while(match("[0-9]"));
+                while(match("[0-9]")) {
+                    checkLimits();
+                }
                 return chars.emit(Token.Type.DECIMAL);
             }
             else{
@@ -132,7 +328,11 @@ public final class Lexer {
     public Token lexString() {
         //string ::= '"' ([^"\n\r\\] | escape)* '"'
         match("[\"]");
+        if (!spec.isReference()) {
+            return lexStringRuns();
+        }
         while(match("[^\"\n\r]")) {
+            checkLimits();
             if (peek("\\\\")) {
                 lexEscape();
             }
@@ -145,6 +345,46 @@ public final class Lexer {
         //throw new UnsupportedOperationException();
     }
 
+    /**
+     * The rest of {@link #lexString()} for non-reference specs, which skips
+     * whole runs of plain characters with {@link CharStream#skipString(int)}
+     * instead of matching them one at a time.
+     *
+     * This accepts and rejects exactly what the reference loop does,
+     * including its quirk that a backslash is only lexed as an escape when it
+     * follows a character consumed as a plain one (so a backslash right after
+     * the opening quote or after an escape is plain), and checks the limits
+     * at the same characters so errors have identical indices.
+     */
+    private Token lexStringRuns() {
+        int maxLength = spec.getLimits().getMaxTokenLength();
+        boolean plain = false;
+        while (true) {
+            //stop at the character that exceeds the max length, if any,
+            //where the reference loop would also throw
+            int run = chars.skipString((int) Math.min(Math.max((long) maxLength - chars.length, 0) + 1, Integer.MAX_VALUE));
+            if (run > 0) {
+                plain = true;
+                checkLimits();
+            }
+            if (!chars.has(0) || chars.get(0) != '\\') {
+                break;
+            } else if (plain) {
+                lexEscape();
+                plain = false;
+            } else {
+                chars.advance();
+                plain = true;
+                checkLimits();
+            }
+        }
+        if (match("[\"]")) {
+            return chars.emit(Token.Type.STRING);
+        } else {
+            throw new ParseException("Invalid token", chars.index);
+        }
+    }
+
     public void lexEscape() {
         //escape ::= '\' [bnrt'"\\]
         match("\\\\");
@@ -155,16 +395,55 @@ public final class Lexer {
     }
 
     public Token lexOperator() {
-        //operator ::= [<>!=] '='? | 'any character'
-        //throw new UnsupportedOperationException();
-        if(match("[<>!=]")){
-            match("=");
-        }else{
-            match(".");
+        if (spec.isReference() && spec.getOperators() == OperatorTable.DEFAULT) {
+            //operator ::= [<>!=] '='? | 'any character'
+            if(match("[<>!=]")){
+                match("=");
+            }else{
+                match(".");
+            }
+            return chars.emit(Token.Type.OPERATOR);
         }
+        //operator ::= longest operator in the table | 'any character'
+        //walks the operator trie directly, so operator tokens share the
+        //table's literal instead of allocating a substring
+        String operator = spec.getOperators().longest(chars);
+        if (operator != null) {
+            for (int i = 0; i < operator.length(); i++) {
+                chars.advance();
+            }
+            return chars.emit(Token.Type.OPERATOR, operator);
+        }
+        String single = chars.has(0) ? OperatorTable.single(chars.get(0)) : null;
+        if (single != null) {
+            chars.advance();
+            return chars.emit(Token.Type.OPERATOR, single);
+        }
+        match(".");
         return chars.emit(Token.Type.OPERATOR);
     }
 
+    /**
+     * Enforces the spec's {@link LexerLimits}, called on each iteration of the
+     * lexing loops. The interrupt flag and the clock are only checked every
+     * 1024 calls to keep this cheap.
+     */
+    private void checkLimits() {
+        if (chars.length > spec.getLimits().getMaxTokenLength()) {
+            throw new LimitExceededException(LimitExceededException.Limit.TOKEN_LENGTH,
+                    "Token exceeds the maximum length of " + spec.getLimits().getMaxTokenLength(), chars.index);
+        }
+        if ((++work & 0x3FF) == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new LimitExceededException(LimitExceededException.Limit.INTERRUPTED,
+                        "Lexing was interrupted", chars.index);
+            } else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                throw new LimitExceededException(LimitExceededException.Limit.TIMEOUT,
+                        "Lexing exceeded the timeout", chars.index);
+            }
+        }
+    }
+
     /**
      * Returns true if the next sequence of characters match the given patterns,
      * which should be a regex. For example, {@code peek("a", "b", "c")} would
@@ -179,8 +458,9 @@ public final class Lexer {
         for(int i = 0; i<patterns.length; i++){
             //If no longer have chars or not a string
             //If the characters match, then match match the pattern
+            //the spec's patterns are precompiled, others fall back to String.matches
             if(!chars.has(i) ||
-               !String.valueOf(chars.get(i)).matches(patterns[i])){
+               !spec.matches(patterns[i], chars.get(i))){
                 return false;
             }
         }
@@ -223,17 +503,24 @@ public final class Lexer {
         //index: position within source
         //length: size of current token
     public static final class CharStream {
-        private final String input;
+        private final CharSequence input;
+        private final int end;
         private int index = 0;
         private int length = 0;
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+        //streams only the characters in [start, end)
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
         }
         //Use this methods to deal with the char stream!
         //checks if input has offset characters remaining
         //ask has before get!
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
         //returns the char at offset position
         public char get(int offset) {
@@ -244,6 +531,37 @@ public final class Lexer {
             index++;
             length++;
         }
+        //advances past at most max characters of a string literal, stopping
+        //before a quote, backslash or line ending. returns how many
+        public int skipString(int max) {
+            int limit = (int) Math.min((long) index + max, end);
+            int i = index;
+            if (input instanceof String) {
+                //a monomorphic loop over the String, which the JIT unrolls
+                String string = (String) input;
+                while (i < limit && !isStringStop(string.charAt(i))) {
+                    i++;
+                }
+            } else {
+                while (i < limit && !isStringStop(input.charAt(i))) {
+                    i++;
+                }
+            }
+            int skipped = i - index;
+            index = i;
+            length += skipped;
+            return skipped;
+        }
+        private static boolean isStringStop(char c) {
+            return c < STRING_STOPS.length && STRING_STOPS[c];
+        }
+        private static final boolean[] STRING_STOPS = new boolean[128];
+        static {
+            STRING_STOPS['"'] = true;
+            STRING_STOPS['\\'] = true;
+            STRING_STOPS['\n'] = true;
+            STRING_STOPS['\r'] = true;
+        }
         //resets the size of the current token to 0. used with advance
         public void skip() {
             length = 0;
@@ -252,7 +570,16 @@ public final class Lexer {
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            return new Token(type, input.subSequence(start, index).toString(), start, byteIndex(start));
+        }
+        //instantiate the current token with a literal equal to its text
+        public Token emit(Token.Type type, String literal) {
+            int start = index - length;
+            skip();
+            return new Token(type, literal, start, byteIndex(start));
+        }
+        private int byteIndex(int start) {
+            return input instanceof Utf8CharSequence ? ((Utf8CharSequence) input).byteOffset(start) : -1;
         }
     }
 }
@@ -0,0 +1,196 @@
+package plc.project;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lexes every file in a directory tree and prints the number of tokens in
+ * each file, followed by any diagnostics and the time spent in each phase:
+ *
+ * <pre>
+ * LexerCli [--threads N] [--glob PATTERN] [--dump DIR] ROOT
+ * </pre>
+ *
+ * Files are lexed as UTF-8 on a bounded pool of worker threads while the tree
+ * is still being walked; when the pool's queue is full the walking thread
+ * lexes the file itself, so memory stays bounded however large the tree is.
+ * With {@code --dump}, the tokens of each file are also written to
+ * {@code DIR/<relative path>.tokens} in the {@link TokenCodec} format.
+ *
+ * The read, lex and write timings are summed over the workers (and the
+ * walking thread, for the files it lexes itself), so they may add up to more
+ * than the wall time. The walk timing excludes those files. The exit status
+ * is 1 if any file failed to lex or be read, and 2 for invalid arguments.
+ *
+ * To keep startup cheap for short runs, {@code gradle cdsArchive} records a
+ * class data sharing archive which {@code gradle run} then uses (on JDK 13
+ * or later).
+ */
+public final class LexerCli {
+
+    private final Path root;
+    private final PathMatcher matcher;
+    private final Path dump;
+    private final Map<Path, Integer> counts = new ConcurrentSkipListMap<>();
+    private final Map<Path, String> diagnostics = new ConcurrentSkipListMap<>();
+    private final LongAdder read = new LongAdder();
+    private final LongAdder lex = new LongAdder();
+    private final LongAdder write = new LongAdder();
+
+    private LexerCli(Path root, PathMatcher matcher, Path dump) {
+        this.root = root;
+        this.matcher = matcher;
+        this.dump = dump;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the command with the given arguments, printing to out and err
+     * instead of the standard streams, and returns the exit status.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String glob = "*";
+        Path dump = null;
+        Path root = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--glob") && i + 1 < args.length) {
+                    glob = args[++i];
+                } else if (args[i].equals("--dump") && i + 1 < args.length) {
+                    dump = Paths.get(args[++i]);
+                } else if (root == null && !args[i].startsWith("--")) {
+                    root = Paths.get(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                }
+            }
+            if (root == null || threads < 1) {
+                throw new IllegalArgumentException("Expected a root directory and at least one thread");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println("Usage: LexerCli [--threads N] [--glob PATTERN] [--dump DIR] ROOT");
+            return 2;
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return new LexerCli(root, matcher, dump).run(threads, out, err);
+    }
+
+    private int run(int threads, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        long start = System.nanoTime();
+        //time spent handing files to the pool, including processing them on
+        //the walking thread when the queue is full, which isn't walking
+        long[] submitting = {0};
+        long walked;
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && matcher.matches(file.getFileName())) {
+                        long submitted = System.nanoTime();
+                        pool.execute(() -> process(file));
+                        submitting[0] += System.nanoTime() - submitted;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    diagnostics.put(file, "Unable to read: " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            walked = System.nanoTime() - start - submitting[0];
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        long total = System.nanoTime() - start;
+        long tokens = 0;
+        for (Map.Entry<Path, Integer> count : counts.entrySet()) {
+            out.println(root.relativize(count.getKey()) + "\t" + count.getValue());
+            tokens += count.getValue();
+        }
+        for (Map.Entry<Path, String> diagnostic : diagnostics.entrySet()) {
+            err.println(root.relativize(diagnostic.getKey()) + ":" + diagnostic.getValue());
+        }
+        out.printf("%,d files, %,d tokens, %d errors in %s%n",
+                counts.size(), tokens, diagnostics.size(), millis(total));
+        out.printf("walk %s, read %s, lex %s, write %s%n",
+                millis(walked), millis(read.sum()), millis(lex.sum()), millis(write.sum()));
+        return diagnostics.isEmpty() ? 0 : 1;
+    }
+
+    private void process(Path file) {
+        long start = System.nanoTime();
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (IOException e) {
+            diagnostics.put(file, "Unable to read: " + e.getMessage());
+            return;
+        } finally {
+            read.add(System.nanoTime() - start);
+        }
+        start = System.nanoTime();
+        Lexer lexer = new Lexer(content);
+        //tokens are only kept when they need to be dumped
+        List<Token> tokens = new ArrayList<>();
+        int[] count = {0};
+        try {
+            lexer.lex(dump != null ? tokens::add : token -> count[0]++);
+        } catch (ParseException e) {
+            LineMap lines = lexer.getLineMap();
+            diagnostics.put(file, lines.getLine(e) + ":" + lines.getColumn(e) + ": " + e.getMessage());
+            return;
+        } finally {
+            lex.add(System.nanoTime() - start);
+        }
+        counts.put(file, dump != null ? tokens.size() : count[0]);
+        if (dump != null) {
+            start = System.nanoTime();
+            Path target = dump.resolve(root.relativize(file).toString() + ".tokens");
+            try {
+                Files.createDirectories(target.getParent());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+                    TokenCodec.write(out, tokens);
+                }
+            } catch (IOException e) {
+                diagnostics.put(file, "Unable to write " + target + ": " + e.getMessage());
+            } finally {
+                write.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+}
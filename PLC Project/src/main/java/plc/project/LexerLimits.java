@@ -0,0 +1,71 @@
+package plc.project;
+
+import java.time.Duration;
+
+/**
+ * Limits on the work a {@link Lexer} will do for a single input, which bound
+ * the time a worker thread can spend on untrusted input. Exceeding a limit
+ * throws a {@link LimitExceededException}.
+ *
+ * The token length and timeout are checked inside the loops of
+ * {@link Lexer#lexString()}, {@link Lexer#lexIdentifier()} and
+ * {@link Lexer#lexNumber()} as well as between tokens, so a single huge token
+ * is stopped part way through. A token which is too long is always reported
+ * at the index after its first char over the limit, whatever its type. The
+ * timeout starts when the lexer is created. A lexer with a token count or
+ * timeout doesn't split a parallel {@link Lexer#stream()}, so the limits
+ * apply to the whole input as they do for {@link Lexer#lex()}. Interrupting
+ * the lexing thread also stops it, whatever the limits.
+ */
+public final class LexerLimits {
+
+    public static final LexerLimits NONE = new LexerLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+
+    private final int maxInputLength;
+    private final int maxTokenLength;
+    private final int maxTokenCount;
+    private final long timeoutNanos;
+
+    private LexerLimits(int maxInputLength, int maxTokenLength, int maxTokenCount, long timeoutNanos) {
+        this.maxInputLength = maxInputLength;
+        this.maxTokenLength = maxTokenLength;
+        this.maxTokenCount = maxTokenCount;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    public int getMaxInputLength() {
+        return maxInputLength;
+    }
+
+    public int getMaxTokenLength() {
+        return maxTokenLength;
+    }
+
+    public int getMaxTokenCount() {
+        return maxTokenCount;
+    }
+
+    /**
+     * Returns the timeout in nanoseconds, or 0 if there is none.
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    public LexerLimits withMaxInputLength(int maxInputLength) {
+        return new LexerLimits(maxInputLength, maxTokenLength, maxTokenCount, timeoutNanos);
+    }
+
+    public LexerLimits withMaxTokenLength(int maxTokenLength) {
+        return new LexerLimits(maxInputLength, maxTokenLength, maxTokenCount, timeoutNanos);
+    }
+
+    public LexerLimits withMaxTokenCount(int maxTokenCount) {
+        return new LexerLimits(maxInputLength, maxTokenLength, maxTokenCount, timeoutNanos);
+    }
+
+    public LexerLimits withTimeout(Duration timeout) {
+        return new LexerLimits(maxInputLength, maxTokenLength, maxTokenCount, Math.max(timeout.toNanos(), 1));
+    }
+
+}
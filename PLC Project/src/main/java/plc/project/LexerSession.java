@@ -0,0 +1,66 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexes a series of inputs on a single thread using a shared
+ * {@link LexerSpec}. The session reuses its token buffer between inputs and
+ * collects a {@link ParseException} as a diagnostic instead of throwing it.
+ *
+ * Sessions are not thread-safe; create one per thread with
+ * {@link LexerSpec#newSession()}.
+ */
+public final class LexerSession {
+
+    private final LexerSpec spec;
+    private final List<Token> tokens = new ArrayList<>();
+    private final List<ParseException> diagnostics = new ArrayList<>();
+    private LineMap lines;
+
+    LexerSession(LexerSpec spec) {
+        this.spec = spec;
+    }
+
+    public LexerSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Lexes the input, returning the tokens lexed before the first error (if
+     * any). An input exceeding the spec's maximum length is a diagnostic like
+     * any other error, with no tokens. The returned list is reused by the next call to lex, so it should
+     * be copied if it needs to outlive the current input.
+     */
+    public List<Token> lex(CharSequence input) {
+        tokens.clear();
+        diagnostics.clear();
+        lines = new LineMap();
+        try {
+            Lexer lexer = new Lexer(spec, input);
+            lines = lexer.getLineMap();
+            lexer.lex(tokens::add);
+        } catch (ParseException e) {
+            diagnostics.add(e);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the errors from the last call to {@link #lex(CharSequence)}.
+     */
+    public List<ParseException> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Returns the line map of the last input lexed.
+     */
+    public LineMap getLineMap() {
+        if (lines == null) {
+            throw new IllegalStateException("No input has been lexed.");
+        }
+        return lines;
+    }
+
+}
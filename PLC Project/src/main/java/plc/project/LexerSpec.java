@@ -0,0 +1,183 @@
+package plc.project;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The immutable configuration of a {@link Lexer}: the operator table and the
+ * character patterns used by {@link Lexer#peek(String...)}, precompiled once.
+ *
+ * A spec holds no per-input state, so a single instance can be shared by any
+ * number of threads. Each thread lexes through its own {@link Lexer} or
+ * {@link LexerSession}, which hold the position, tokens and diagnostics for
+ * the input being lexed.
+ */
+public final class LexerSpec {
+
+    /**
+     * The patterns used by the lex methods of {@link Lexer}. Any other
+     * pattern passed to peek/match still works, but is compiled on each call.
+     */
+    private static final String[] PATTERNS = {
+            "[ \b\n\r\t]", "[A-Za-z_]", "[A-Za-z0-9_-]", "[+\\-]", "[0-9]", "[.]", "[']", "[\"]",
+            "[^\'\n\r\\\\]", "[^\"\n\r]", "\\\\", "[bnrt'\"\\\\]", "."
+    };
+
+    public static final LexerSpec DEFAULT = new LexerSpec(OperatorTable.DEFAULT, compile(PATTERNS), false, LexerLimits.NONE, null, false, false);
+
+    /**
+     * The original lexer, which matches every pattern with String.matches and
+     * lexes operators with peek/match instead of the operator table (unless a
+     * custom table is set). This is slow, and exists as the baseline other
+     * specs are verified against by {@link ShadowLexer}.
+     */
+    public static final LexerSpec REFERENCE = new LexerSpec(OperatorTable.DEFAULT, Collections.emptyMap(), true, LexerLimits.NONE, null, false, false);
+
+    private final OperatorTable operators;
+    private final Map<String, CharClass> classes;
+    private final boolean reference;
+    private final LexerLimits limits;
+    private final LatencyRecorder recorder;
+    private final boolean identifierIndex;
+    private final boolean trivia;
+
+    private LexerSpec(OperatorTable operators, Map<String, CharClass> classes, boolean reference,
+                      LexerLimits limits, LatencyRecorder recorder, boolean identifierIndex, boolean trivia) {
+        this.operators = operators;
+        this.classes = classes;
+        this.reference = reference;
+        this.limits = limits;
+        this.recorder = recorder;
+        this.identifierIndex = identifierIndex;
+        this.trivia = trivia;
+    }
+
+    public OperatorTable getOperators() {
+        return operators;
+    }
+
+    public LexerLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Returns a copy of this spec using the given operator table.
+     */
+    public LexerSpec withOperators(OperatorTable operators) {
+        return new LexerSpec(operators, classes, reference, limits, recorder, identifierIndex, trivia);
+    }
+
+    /**
+     * Returns a copy of this spec which enforces the given limits.
+     */
+    public LexerSpec withLimits(LexerLimits limits) {
+        return new LexerSpec(operators, classes, reference, limits, recorder, identifierIndex, trivia);
+    }
+
+    /**
+     * Returns the recorder for the latency of {@link Lexer#lex()}, or null if
+     * latency isn't recorded.
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Returns a copy of this spec which records the latency of each call to
+     * {@link Lexer#lex()} into the given recorder.
+     */
+    public LexerSpec withLatencyRecorder(LatencyRecorder recorder) {
+        return new LexerSpec(operators, classes, reference, limits, recorder, identifierIndex, trivia);
+    }
+
+    /**
+     * Returns true if lexers build an {@link IdentifierIndex} of the tokens
+     * they lex.
+     */
+    public boolean isIdentifierIndexed() {
+        return identifierIndex;
+    }
+
+    /**
+     * Returns a copy of this spec which builds an {@link IdentifierIndex}
+     * while lexing, available from {@link Lexer#getIdentifierIndex()}. Lexers
+     * using it don't split a parallel {@link Lexer#stream()}.
+     */
+    public LexerSpec withIdentifierIndex(boolean identifierIndex) {
+        return new LexerSpec(operators, classes, reference, limits, recorder, identifierIndex, trivia);
+    }
+
+    /**
+     * Returns true if lexers record the whitespace between tokens as
+     * {@link Trivia}.
+     */
+    public boolean isTriviaPreserved() {
+        return trivia;
+    }
+
+    /**
+     * Returns a copy of this spec which records the whitespace between
+     * tokens, available from {@link Lexer#getTrivia()}. Lexers using it don't
+     * split a parallel {@link Lexer#stream()}.
+     */
+    public LexerSpec withTrivia(boolean trivia) {
+        return new LexerSpec(operators, classes, reference, limits, recorder, identifierIndex, trivia);
+    }
+
+    /**
+     * Returns a new session for lexing many inputs on the current thread.
+     */
+    public LexerSession newSession() {
+        return new LexerSession(this);
+    }
+
+    /**
+     * Returns true if this spec should lex with the original peek/match
+     * implementation rather than any faster equivalent.
+     */
+    boolean isReference() {
+        return reference;
+    }
+
+    /**
+     * Returns true if the char matches the pattern, which is equivalent to
+     * {@code String.valueOf(c).matches(pattern)}.
+     */
+    boolean matches(String pattern, char c) {
+        CharClass compiled = classes.get(pattern);
+        return compiled != null ? compiled.matches(c) : String.valueOf(c).matches(pattern);
+    }
+
+    private static Map<String, CharClass> compile(String... patterns) {
+        Map<String, CharClass> classes = new HashMap<>();
+        for (String pattern : patterns) {
+            classes.put(pattern, new CharClass(Pattern.compile(pattern)));
+        }
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * A pattern matched against a single char, with the result for every
+     * ASCII char computed up front.
+     */
+    private static final class CharClass {
+
+        private final boolean[] ascii = new boolean[128];
+        private final Pattern pattern;
+
+        private CharClass(Pattern pattern) {
+            this.pattern = pattern;
+            for (char c = 0; c < ascii.length; c++) {
+                ascii[c] = pattern.matcher(String.valueOf(c)).matches();
+            }
+        }
+
+        private boolean matches(char c) {
+            return c < 128 ? ascii[c] : pattern.matcher(String.valueOf(c)).matches();
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package plc.project;
+
+/**
+ * Thrown when lexing is stopped by one of the spec's {@link LexerLimits} or
+ * because the lexing thread was interrupted. The index is the position the
+ * lexer had reached when it stopped.
+ */
+public final class LimitExceededException extends ParseException {
+
+    public enum Limit {
+        INPUT_LENGTH,
+        TOKEN_LENGTH,
+        TOKEN_COUNT,
+        TIMEOUT,
+        INTERRUPTED
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Limit limit;
+
+    public LimitExceededException(Limit limit, String message, int index) {
+        super(message, index);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+}
@@ -0,0 +1,63 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Maps character indices to line and column numbers (both starting at 1).
+ *
+ * The map is filled in by {@link Lexer#lex()} as it skips whitespace, since
+ * every line ending in a valid input is whitespace between tokens. A line
+ * ends at {@code \n}, {@code \r\n}, or a lone {@code \r}. Lookups are a binary
+ * search over the start index of each line.
+ */
+public final class LineMap {
+
+    private int[] starts = new int[16];
+    private int count = 1;
+
+    /**
+     * Records that a new line starts at the given index, which must be after
+     * all previously recorded lines.
+     */
+    void add(int start) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+    }
+
+    /**
+     * Returns the number of lines recorded so far.
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    public int getLine(int index) {
+        int line = Arrays.binarySearch(starts, 0, count, index);
+        //on a miss, binarySearch returns -(insertion point) - 1, and the line
+        //containing index is the one just before the insertion point
+        return line >= 0 ? line + 1 : -line - 1;
+    }
+
+    public int getColumn(int index) {
+        return index - starts[getLine(index) - 1] + 1;
+    }
+
+    public int getLine(Token token) {
+        return getLine(token.getIndex());
+    }
+
+    public int getColumn(Token token) {
+        return getColumn(token.getIndex());
+    }
+
+    public int getLine(ParseException exception) {
+        return getLine(exception.getIndex());
+    }
+
+    public int getColumn(ParseException exception) {
+        return getColumn(exception.getIndex());
+    }
+
+}
@@ -0,0 +1,217 @@
+package plc.project;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Stores tokens as fixed size records in direct (off-heap) buffers, so the
+ * tokens of very large inputs are not traced by the garbage collector.
+ *
+ * Each record is 16 bytes: the token's offset (a long, so sources larger than
+ * a single String can be stored by setting a {@link #setBase(long) base}), its
+ * length and its type. Literals are not stored; {@link #get(int, CharSequence)}
+ * recreates a token from the source it was lexed from. Records are written in
+ * native byte order into chunks of {@link #CHUNK_RECORDS} records, and a chunk
+ * can be handed to native or mmap based consumers with {@link #chunk(int)}.
+ *
+ * The store must be {@link #close() closed} when it is no longer needed, which
+ * frees the chunks' memory right away rather than whenever the garbage
+ * collector finds them unreachable (falling back to that only if the JDK
+ * doesn't allow freeing a direct buffer explicitly). It is not thread-safe.
+ */
+public final class OffHeapTokenStore implements Consumer<Token>, AutoCloseable {
+
+    public static final int RECORD_BYTES = 16;
+    public static final int CHUNK_RECORDS = 1 << 16;
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Consumer<ByteBuffer> FREE = free();
+
+    private List<ByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+    private long base = 0;
+
+    /**
+     * Sets the offset added to the index of tokens passed to
+     * {@link #accept(Token)}, which is the position of the current input in
+     * the overall source.
+     */
+    public void setBase(long base) {
+        this.base = base;
+    }
+
+    @Override
+    public void accept(Token token) {
+        add(token.getType(), base + token.getIndex(), token.getLiteral().length());
+    }
+
+    public void add(Token.Type type, long offset, int length) {
+        checkOpen();
+        int record = (int) (size % CHUNK_RECORDS);
+        if (record == 0) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_BYTES).order(ByteOrder.nativeOrder()));
+        }
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        int position = record * RECORD_BYTES;
+        chunk.putLong(position, offset);
+        chunk.putInt(position + 8, length);
+        chunk.putInt(position + 12, type.ordinal());
+        size++;
+    }
+
+    public long size() {
+        checkOpen();
+        return size;
+    }
+
+    public Token.Type getType(long index) {
+        return TYPES[record(index).getInt(position(index) + 12)];
+    }
+
+    public long getOffset(long index) {
+        return record(index).getLong(position(index));
+    }
+
+    public int getLength(long index) {
+        return record(index).getInt(position(index) + 8);
+    }
+
+    /**
+     * Recreates the token at index from the source it was lexed from, which
+     * must be the input at the current base.
+     */
+    public Token get(long index, CharSequence source) {
+        int start = (int) (getOffset(index) - base);
+        return new Token(getType(index), source.subSequence(start, start + getLength(index)).toString(), start);
+    }
+
+    /**
+     * Returns a read-only view of the given chunk, limited to the records
+     * written so far.
+     */
+    public ByteBuffer chunk(int chunk) {
+        checkOpen();
+        ByteBuffer view = chunks.get(chunk).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        long records = Math.min(size - (long) chunk * CHUNK_RECORDS, CHUNK_RECORDS);
+        view.limit((int) records * RECORD_BYTES);
+        return view;
+    }
+
+    public int chunkCount() {
+        checkOpen();
+        return chunks.size();
+    }
+
+    /**
+     * Returns a cursor for iterating over the records in order without
+     * creating a {@link Token} for each one.
+     */
+    public Cursor cursor() {
+        checkOpen();
+        return new Cursor();
+    }
+
+    /**
+     * Frees the chunks. Views returned by {@link #chunk(int)} share their
+     * memory, so they must not be used after this (which may crash the JVM).
+     * Closing a closed store has no effect.
+     */
+    @Override
+    public void close() {
+        if (chunks != null) {
+            chunks.forEach(FREE);
+            chunks = null;
+        }
+    }
+
+    /**
+     * Returns a function which frees a direct buffer's memory immediately:
+     * {@code Unsafe.invokeCleaner} on JDK 9 and later, or the buffer's
+     * {@code Cleaner} on JDK 8. If neither is accessible, buffers are left to
+     * the garbage collector.
+     */
+    private static Consumer<ByteBuffer> free() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //JDK 8, where there is no invokeCleaner
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> invoke(clean, invoke(cleaner, buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return buffer -> {};
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to free a direct buffer.", e);
+        }
+    }
+
+    private ByteBuffer record(long index) {
+        checkOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return chunks.get((int) (index / CHUNK_RECORDS));
+    }
+
+    private static int position(long index) {
+        return (int) (index % CHUNK_RECORDS) * RECORD_BYTES;
+    }
+
+    private void checkOpen() {
+        if (chunks == null) {
+            throw new IllegalStateException("The token store has been closed.");
+        }
+    }
+
+    /**
+     * A sequential view of the store's records.
+     */
+    public final class Cursor {
+
+        private long index = -1;
+
+        /**
+         * Moves to the next record, returning false if there are none left.
+         */
+        public boolean next() {
+            if (index + 1 >= size()) {
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        public Token.Type type() {
+            return getType(index);
+        }
+
+        public long offset() {
+            return getOffset(index);
+        }
+
+        public int length() {
+            return getLength(index);
+        }
+
+    }
+
+}
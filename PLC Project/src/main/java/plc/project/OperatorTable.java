@@ -0,0 +1,147 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable set of multi-character operators used by
+ * {@link Lexer#lexOperator()}, compiled into a trie so the lexer can find the
+ * longest operator at the current position in a single walk.
+ *
+ * The root of the trie is a jump table indexed by the first character (for
+ * ASCII), and each operator is stored once as a canonical literal which is
+ * shared by every token lexed for it. Characters which are not the start of an
+ * operator in the table are still lexed as single character operators, which
+ * for ASCII also share a literal from {@link #single(char)}.
+ *
+ * Note that {@link Lexer#lexToken()} only delegates to lexOperator when the
+ * next character doesn't start another token type, so operators starting with
+ * a letter, digit, quote, or a sign followed by a digit are never matched.
+ */
+public final class OperatorTable {
+
+    /**
+     * The operators of the grammar, {@code [<>!=] '='?}.
+     */
+    public static final OperatorTable DEFAULT = of("<", "<=", ">", ">=", "!", "!=", "=", "==");
+
+    /**
+     * The literals of single ASCII character operators, except the line
+     * endings which {@code match(".")} never matches.
+     */
+    private static final String[] SINGLE = new String[128];
+
+    static {
+        for (char c = 0; c < SINGLE.length; c++) {
+            if (c != '\n' && c != '\r') {
+                SINGLE[c] = String.valueOf(c);
+            }
+        }
+    }
+
+    private final Node[] ascii = new Node[128];
+    private final Node root;
+
+    private OperatorTable(Node root) {
+        this.root = root;
+        for (int i = 0; i < root.keys.length && root.keys[i] < 128; i++) {
+            ascii[root.keys[i]] = root.next[i];
+        }
+    }
+
+    public static OperatorTable of(String... operators) {
+        Builder root = new Builder();
+        for (String operator : operators) {
+            if (operator.isEmpty()) {
+                throw new IllegalArgumentException("Operators cannot be empty.");
+            } else if (containsWhitespace(operator)) {
+                //tokens never contain whitespace, which Lexer#stream relies on to split at line endings
+                throw new IllegalArgumentException("Operators cannot contain whitespace: " + operator);
+            }
+            Builder node = root;
+            for (int i = 0; i < operator.length(); i++) {
+                node = node.children.computeIfAbsent(operator.charAt(i), c -> new Builder());
+            }
+            node.literal = operator;
+        }
+        return new OperatorTable(root.build());
+    }
+
+    private static boolean containsWhitespace(String operator) {
+        for (int i = 0; i < operator.length(); i++) {
+            char c = operator.charAt(i);
+            if (c == ' ' || c == '\b' || c == '\n' || c == '\r' || c == '\t') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the canonical literal of the longest operator at the start of
+     * the char stream, or {@code null} if no operator in the table matches.
+     * The char stream is not advanced.
+     */
+    String longest(Lexer.CharStream chars) {
+        if (!chars.has(0)) {
+            return null;
+        }
+        char first = chars.get(0);
+        Node node = first < 128 ? ascii[first] : root.child(first);
+        String longest = null;
+        for (int offset = 1; node != null; offset++) {
+            if (node.literal != null) {
+                longest = node.literal;
+            }
+            node = chars.has(offset) ? node.child(chars.get(offset)) : null;
+        }
+        return longest;
+    }
+
+    /**
+     * Returns the shared literal of a single character operator, or
+     * {@code null} if the character isn't one with a shared literal.
+     */
+    static String single(char c) {
+        return c < SINGLE.length ? SINGLE[c] : null;
+    }
+
+    private static final class Node {
+
+        private final char[] keys;
+        private final Node[] next;
+        private final String literal;
+
+        private Node(char[] keys, Node[] next, String literal) {
+            this.keys = keys;
+            this.next = next;
+            this.literal = literal;
+        }
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? next[i] : null;
+        }
+
+    }
+
+    private static final class Builder {
+
+        private final Map<Character, Builder> children = new TreeMap<>();
+        private String literal;
+
+        private Node build() {
+            char[] keys = new char[children.size()];
+            Node[] next = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                next[i++] = child.getValue().build();
+            }
+            return new Node(keys, next, literal);
+        }
+
+    }
+
+}
@@ -1,6 +1,6 @@
 package plc.project;
 
-public final class ParseException extends RuntimeException {
+public class ParseException extends RuntimeException {
 
     private final int index;
 
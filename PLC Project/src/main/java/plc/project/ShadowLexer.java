@@ -0,0 +1,239 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Lexes with a fast spec on the caller's thread, and re-lexes a sample of the
+ * inputs with a reference spec (usually {@link LexerSpec#REFERENCE}) on a
+ * background executor to check that both produce the same tokens, or throw a
+ * {@link ParseException} at the same index.
+ *
+ * Overhead is bounded by the sample rate and by a limit on the number of
+ * verifications in flight; inputs sampled while the limit is reached are
+ * skipped rather than queued. Each mismatch is minimized (by repeatedly
+ * deleting chunks of the input while the engines still disagree) and passed to
+ * the listener.
+ *
+ * The fast spec's {@link LexerLimits} apply to {@link #lex(String)}, but not
+ * to the verification: an input stopped by a limit isn't sampled, and the
+ * fast outcomes compared with the reference (such as while minimizing) are
+ * lexed without limits, since a limit isn't a difference between the engines.
+ * Only {@link #lex(String)} records to the fast spec's {@link LatencyRecorder};
+ * the verification and minimization runs aren't real inputs, so they record
+ * nothing.
+ */
+public final class ShadowLexer {
+
+    /**
+     * The most inputs tried while minimizing a single mismatch.
+     */
+    private static final int MAX_MINIMIZE_ATTEMPTS = 1000;
+
+    private final LexerSpec fast;
+    private final LexerSpec shadow;
+    private final LexerSpec reference;
+    private final double sampleRate;
+    private final Semaphore inFlight;
+    private final Executor executor;
+    private final Consumer<Mismatch> listener;
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    public ShadowLexer(LexerSpec fast, LexerSpec reference, double sampleRate, int maxInFlight,
+                       Executor executor, Consumer<Mismatch> listener) {
+        this.fast = fast;
+        this.shadow = fast.withLimits(LexerLimits.NONE).withLatencyRecorder(null);
+        this.reference = reference.withLimits(LexerLimits.NONE).withLatencyRecorder(null);
+        this.sampleRate = sampleRate;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Lexes the input with the fast spec, in the same way as
+     * {@link Lexer#lex()}.
+     */
+    public List<Token> lex(String input) {
+        Outcome outcome = Outcome.of(fast, input);
+        if (sampleRate > 0 && !(outcome.exception instanceof LimitExceededException)
+                && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            //the caller may modify the returned list, so verify against a copy
+            verify(input, outcome.exception != null ? outcome : new Outcome(new ArrayList<>(outcome.tokens), null));
+        }
+        if (outcome.exception != null) {
+            throw outcome.exception;
+        }
+        return outcome.tokens;
+    }
+
+    /**
+     * Returns the number of inputs verified against the reference spec.
+     */
+    public long getVerified() {
+        return verified.get();
+    }
+
+    /**
+     * Returns the number of sampled inputs which weren't verified because too
+     * many verifications were already in flight.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getMismatches() {
+        return mismatches.get();
+    }
+
+    private void verify(String input, Outcome outcome) {
+        if (!inFlight.tryAcquire()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Outcome expected = Outcome.of(reference, input);
+                    verified.incrementAndGet();
+                    if (!expected.equals(outcome)) {
+                        mismatches.incrementAndGet();
+                        String minimized = minimize(input);
+                        listener.accept(new Mismatch(input, minimized,
+                                Outcome.of(shadow, minimized), Outcome.of(reference, minimized)));
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            skipped.incrementAndGet();
+        }
+    }
+
+    private String minimize(String input) {
+        int attempts = 0;
+        for (int chunk = input.length() / 2; chunk >= 1 && attempts < MAX_MINIMIZE_ATTEMPTS; chunk /= 2) {
+            for (int start = 0; start < input.length() && attempts < MAX_MINIMIZE_ATTEMPTS; attempts++) {
+                String candidate = input.substring(0, start) + input.substring(Math.min(start + chunk, input.length()));
+                if (!Outcome.of(shadow, candidate).equals(Outcome.of(reference, candidate))) {
+                    input = candidate;
+                } else {
+                    start += chunk;
+                }
+            }
+        }
+        return input;
+    }
+
+    /**
+     * The result of lexing an input: either the tokens, or the exception.
+     */
+    public static final class Outcome {
+
+        private final List<Token> tokens;
+        private final ParseException exception;
+
+        private Outcome(List<Token> tokens, ParseException exception) {
+            this.tokens = tokens;
+            this.exception = exception;
+        }
+
+        static Outcome of(LexerSpec spec, String input) {
+            try {
+                return new Outcome(new Lexer(spec, input).lex(), null);
+            } catch (ParseException e) {
+                return new Outcome(null, e);
+            }
+        }
+
+        public List<Token> getTokens() {
+            return tokens;
+        }
+
+        public ParseException getException() {
+            return exception;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Outcome)) {
+                return false;
+            }
+            Outcome other = (Outcome) obj;
+            return exception != null
+                    ? other.exception != null && exception.getIndex() == other.exception.getIndex()
+                    : other.exception == null && tokens.equals(other.tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return exception != null ? exception.getIndex() : tokens.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return exception != null ? "ParseException@" + exception.getIndex() : tokens.toString();
+        }
+
+    }
+
+    /**
+     * An input on which the fast and reference specs disagree.
+     */
+    public static final class Mismatch {
+
+        private final String input;
+        private final String minimized;
+        private final Outcome fast;
+        private final Outcome reference;
+
+        private Mismatch(String input, String minimized, Outcome fast, Outcome reference) {
+            this.input = input;
+            this.minimized = minimized;
+            this.fast = fast;
+            this.reference = reference;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        /**
+         * Returns a smaller input which still produces a mismatch.
+         */
+        public String getMinimized() {
+            return minimized;
+        }
+
+        /**
+         * Returns the outcome of the fast spec on the minimized input.
+         */
+        public Outcome getFast() {
+            return fast;
+        }
+
+        /**
+         * Returns the outcome of the reference spec on the minimized input.
+         */
+        public Outcome getReference() {
+            return reference;
+        }
+
+        @Override
+        public String toString() {
+            return "Mismatch on " + minimized + ": fast=" + fast + ", reference=" + reference;
+        }
+
+    }
+
+}
@@ -0,0 +1,290 @@
+package plc.project;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Many small sources lexed together as one unit. The sources are
+ * concatenated into a single character arena, separated by line endings, and
+ * lexed in one pass by one {@link Lexer}; tokens are stored as packed arrays
+ * of type, source id, offset and length rather than as {@link Token} objects,
+ * so the per-source cost is a few array entries instead of a string, a lexer,
+ * a list and a token per token.
+ *
+ * Because no token may span a line ending, each source lexes to the same
+ * tokens as it would on its own. An error in one source is recorded as its
+ * diagnostic (keeping the tokens lexed before it, as in {@link LexerSession})
+ * and lexing resumes at the start of the next source. Offsets and
+ * diagnostic indices are relative to their source.
+ *
+ * The spec's limits on token length apply to each token as usual, but the
+ * other {@link LexerLimits} apply to the bundle as a whole, and exceeding them
+ * throws a {@link LimitExceededException} for the bundle. The same lexer
+ * resumes after each error, so the timeout and token count are shared by
+ * every source rather than starting over.
+ */
+public final class SourceBundle {
+
+    private static final int MAGIC = 0x504C4342; //PLCB
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final String arena;
+    private final int[] starts;
+    private final ParseException[] diagnostics;
+    private int count = 0;
+    private byte[] types;
+    private int[] sourceIds;
+    private int[] offsets;
+    private int[] lengths;
+    //the first token of each source, followed by the token count
+    private final int[] firstTokens;
+
+    private SourceBundle(String arena, int[] starts, int capacity) {
+        this.arena = arena;
+        this.starts = starts;
+        this.diagnostics = new ParseException[starts.length - 1];
+        this.firstTokens = new int[starts.length];
+        this.types = new byte[capacity];
+        this.sourceIds = new int[capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    /**
+     * Lexes the sources into a bundle, where each source's id is its index in
+     * the list.
+     */
+    public static SourceBundle lex(LexerSpec spec, List<? extends CharSequence> sources) {
+        int size = 0;
+        for (CharSequence source : sources) {
+            size += source.length() + 1;
+        }
+        StringBuilder arena = new StringBuilder(size);
+        int[] starts = new int[sources.size() + 1];
+        for (int i = 0; i < sources.size(); i++) {
+            starts[i] = arena.length();
+            arena.append(sources.get(i)).append('\n');
+        }
+        starts[sources.size()] = arena.length();
+        SourceBundle bundle = new SourceBundle(arena.toString(), starts, Math.max(size / 4, 16));
+        bundle.lex(spec);
+        return bundle;
+    }
+
+    private void lex(LexerSpec spec) {
+        Lexer lexer = new Lexer(spec, arena);
+        int source = 0;
+        while (source < getSourceCount()) {
+            try {
+                lexer.lexAll(this::add);
+                break;
+            } catch (ParseException e) {
+                if (e instanceof LimitExceededException
+                        && ((LimitExceededException) e).getLimit() != LimitExceededException.Limit.TOKEN_LENGTH) {
+                    throw e;
+                }
+                source = sourceOf(e.getIndex(), source);
+                diagnostics[source] = relocate(e, -starts[source]);
+                source++;
+                lexer.resume(starts[source]);
+            }
+        }
+        indexSources();
+    }
+
+    private void add(Token token) {
+        int source = sourceOf(token.getIndex(), count == 0 ? 0 : sourceIds[count - 1]);
+        add((byte) token.getType().ordinal(), source, token.getIndex() - starts[source], token.getLiteral().length());
+    }
+
+    private void add(byte type, int source, int offset, int length) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            sourceIds = Arrays.copyOf(sourceIds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[count] = type;
+        sourceIds[count] = source;
+        offsets[count] = offset;
+        lengths[count] = length;
+        count++;
+    }
+
+    /**
+     * Fills in the first token of each source, given that tokens are stored
+     * in source order.
+     */
+    private void indexSources() {
+        int token = 0;
+        for (int source = 0; source < firstTokens.length; source++) {
+            while (token < count && sourceIds[token] < source) {
+                token++;
+            }
+            firstTokens[source] = token;
+        }
+    }
+
+    /**
+     * Returns the source containing the arena index, searching forward from
+     * the given source since tokens are lexed in order.
+     */
+    private int sourceOf(int index, int from) {
+        int source = from;
+        while (source + 1 < getSourceCount() && index >= starts[source + 1]) {
+            source++;
+        }
+        return source;
+    }
+
+    private static ParseException relocate(ParseException e, int delta) {
+        if (e instanceof LimitExceededException) {
+            return new LimitExceededException(((LimitExceededException) e).getLimit(), e.getMessage(), e.getIndex() + delta);
+        }
+        return new ParseException(e.getMessage(), e.getIndex() + delta);
+    }
+
+    public int getSourceCount() {
+        return starts.length - 1;
+    }
+
+    public CharSequence getSource(int source) {
+        return arena.subSequence(starts[source], starts[source + 1] - 1);
+    }
+
+    /**
+     * Returns the error which stopped lexing the source, or null if it was
+     * lexed completely.
+     */
+    public ParseException getDiagnostic(int source) {
+        return diagnostics[source];
+    }
+
+    /**
+     * Returns the total number of tokens in the bundle.
+     */
+    public int getTokenCount() {
+        return count;
+    }
+
+    /**
+     * Returns the index of the first token of the source. The tokens of a
+     * source are those from its first token up to the next source's.
+     */
+    public int getFirstToken(int source) {
+        return firstTokens[source];
+    }
+
+    public Token.Type getType(int token) {
+        return TYPES[types[checkIndex(token)]];
+    }
+
+    public int getSourceId(int token) {
+        return sourceIds[checkIndex(token)];
+    }
+
+    /**
+     * Returns the token's index relative to the start of its source.
+     */
+    public int getOffset(int token) {
+        return offsets[checkIndex(token)];
+    }
+
+    public int getLength(int token) {
+        return lengths[checkIndex(token)];
+    }
+
+    /**
+     * Materializes a token, with its index relative to its source.
+     */
+    public Token getToken(int token) {
+        int start = starts[getSourceId(token)] + offsets[token];
+        return new Token(getType(token), arena.substring(start, start + lengths[token]), offsets[token]);
+    }
+
+    /**
+     * Materializes the tokens of a source, equal to those from lexing the
+     * source on its own (up to its diagnostic, if any).
+     */
+    public List<Token> getTokens(int source) {
+        List<Token> tokens = new ArrayList<>(firstTokens[source + 1] - firstTokens[source]);
+        for (int i = firstTokens[source]; i < firstTokens[source + 1]; i++) {
+            tokens.add(getToken(i));
+        }
+        return tokens;
+    }
+
+    private int checkIndex(int token) {
+        if (token < 0 || token >= count) {
+            throw new IndexOutOfBoundsException("Token " + token + " of " + count);
+        }
+        return token;
+    }
+
+    /**
+     * Writes the whole bundle, including its sources and diagnostics, in a
+     * form read by {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(getSourceCount());
+        for (int start : starts) {
+            out.writeInt(start);
+        }
+        out.writeInt(arena.length());
+        out.writeChars(arena);
+        for (ParseException diagnostic : diagnostics) {
+            if (diagnostic == null) {
+                out.writeByte(0);
+            } else {
+                boolean limit = diagnostic instanceof LimitExceededException;
+                out.writeByte(limit ? 2 + ((LimitExceededException) diagnostic).getLimit().ordinal() : 1);
+                out.writeInt(diagnostic.getIndex());
+                out.writeUTF(String.valueOf(diagnostic.getMessage()));
+            }
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeByte(types[i]);
+            out.writeInt(sourceIds[i]);
+            out.writeInt(offsets[i]);
+            out.writeInt(lengths[i]);
+        }
+    }
+
+    public static SourceBundle read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a source bundle.");
+        }
+        int[] starts = new int[in.readInt() + 1];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = in.readInt();
+        }
+        char[] arena = new char[in.readInt()];
+        for (int i = 0; i < arena.length; i++) {
+            arena[i] = in.readChar();
+        }
+        SourceBundle bundle = new SourceBundle(new String(arena), starts, 16);
+        for (int i = 0; i < bundle.diagnostics.length; i++) {
+            int kind = in.readByte();
+            if (kind != 0) {
+                int index = in.readInt();
+                String message = in.readUTF();
+                bundle.diagnostics[i] = kind == 1 ? new ParseException(message, index)
+                        : new LimitExceededException(LimitExceededException.Limit.values()[kind - 2], message, index);
+            }
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            bundle.add(in.readByte(), in.readInt(), in.readInt(), in.readInt());
+        }
+        bundle.indexSources();
+        return bundle;
+    }
+
+}
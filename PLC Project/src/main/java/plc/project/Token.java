@@ -14,11 +14,17 @@ public final class Token {
     private final Type type;
     private final String literal;
     private final int index;
+    private final int byteIndex;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, -1);
+    }
+
+    public Token(Type type, String literal, int index, int byteIndex) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.byteIndex = byteIndex;
     }
 
     public Type getType() {
@@ -33,6 +39,16 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the offset of the token in the UTF-8 bytes it was lexed from,
+     * or -1 if the lexer was given a String. This is not part of
+     * {@link #equals(Object)}, so tokens lexed from bytes and from the decoded
+     * String are equal.
+     */
+    public int getByteIndex() {
+        return byteIndex;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
@@ -41,6 +57,11 @@ public final class Token {
                 && index == ((Token) obj).index;
     }
 
+    @Override
+    public int hashCode() {
+        return (31 * type.ordinal() + literal.hashCode()) * 31 + index;
+    }
+
     @Override
     public String toString() {
         return type + "=" + literal + "@" + index;
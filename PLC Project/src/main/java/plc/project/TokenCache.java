@@ -0,0 +1,308 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of the tokens lexed from source files, stored as one
+ * entry file per source in a cache directory so it survives JVM restarts.
+ *
+ * Entries are keyed by the source's absolute path and validated against its
+ * size, modification time and SHA-256 content hash. A source whose size and
+ * modification time are unchanged is not read or lexed at all; if only the
+ * modification time changed, the content hash decides whether the cached
+ * tokens are still valid.
+ *
+ * When the cache is opened, every entry file is memory-mapped and its header
+ * loaded, and tokens are decoded from the mapping on first use. The
+ * directories of cached sources are watched with a {@link WatchService}: when
+ * a source is modified its entry must be revalidated against the content hash
+ * (which also covers edits within the file system's mtime granularity), and
+ * when it is deleted its entry is dropped.
+ *
+ * Sources are lexed as UTF-8 with {@link Lexer#Lexer(byte[])}. A source which
+ * fails to lex is not cached, and its {@link ParseException} is rethrown.
+ */
+public final class TokenCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x504C4354; //PLCT
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".tokens";
+
+    private final Path directory;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Path> watched = ConcurrentHashMap.newKeySet();
+    private final WatchService watcher;
+    private final Thread watcherThread;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private TokenCache(Path directory) throws IOException {
+        this.directory = directory;
+        this.watcher = directory.getFileSystem().newWatchService();
+        this.watcherThread = new Thread(this::processEvents, "token-cache-watcher");
+        watcherThread.setDaemon(true);
+    }
+
+    /**
+     * Opens the cache stored in the given directory (creating it if needed)
+     * and loads the headers of the existing entries. Entries whose source
+     * directory can no longer be watched, such as one which has been deleted,
+     * are deleted.
+     */
+    public static TokenCache open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        TokenCache cache = new TokenCache(directory);
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    Entry entry = Entry.load(file);
+                    if (entry != null) {
+                        cache.load(entry);
+                    }
+                }
+            }
+            cache.watcherThread.start();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            cache.watcher.close();
+            throw e;
+        }
+    }
+
+    private void load(Entry entry) {
+        try {
+            watch(entry.source);
+            entries.put(entry.source, entry);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(entry.file);
+            } catch (IOException ignored) {
+                //left for the next open to try again
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens of the given source file, lexing it only if there is
+     * no valid entry in the cache.
+     */
+    public List<Token> get(Path file) throws IOException {
+        Path source = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry = entries.get(source);
+        if (entry != null && !entry.stale && entry.size == size && entry.modified == modified) {
+            hits.incrementAndGet();
+            return entry.tokens();
+        }
+        byte[] content = Files.readAllBytes(source);
+        byte[] hash = sha256(content);
+        List<Token> tokens;
+        if (entry != null && entry.size == content.length && Arrays.equals(entry.hash, hash)) {
+            //touched but unchanged, so only the header needs updating
+            hits.incrementAndGet();
+            tokens = entry.tokens();
+        } else {
+            misses.incrementAndGet();
+            tokens = Collections.unmodifiableList(new Lexer(content).lex());
+        }
+        watch(source);
+        entries.put(source, store(source, content.length, modified, hash, tokens));
+        return tokens;
+    }
+
+    /**
+     * Removes the entry for the given source, if there is one.
+     */
+    public void invalidate(Path file) {
+        Entry entry = entries.remove(file.toAbsolutePath().normalize());
+        if (entry != null) {
+            try {
+                Files.deleteIfExists(entry.file);
+            } catch (IOException ignored) {
+                //the entry is already gone from memory, and a stale file is
+                //rejected by its size/modified/hash check when reloaded
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+        watcherThread.interrupt();
+    }
+
+    private Entry store(Path source, long size, long modified, byte[] hash, List<Token> tokens) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] path = source.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(path.length);
+            out.write(path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.write(hash);
+            TokenCodec.write(out, tokens);
+        }
+        Path file = directory.resolve(hex(sha256(source.toString().getBytes(StandardCharsets.UTF_8))) + EXTENSION);
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Entry(file, source, size, modified, hash, tokens);
+    }
+
+    private void watch(Path source) throws IOException {
+        Path parent = source.getParent();
+        if (parent != null && watched.add(parent)) {
+            parent.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+        }
+    }
+
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path parent = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        //events were lost, so check everything in the directory
+                        for (Entry entry : entries.values()) {
+                            if (parent.equals(entry.source.getParent())) {
+                                entry.stale = true;
+                            }
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        invalidate(parent.resolve((Path) event.context()));
+                    } else {
+                        Entry entry = entries.get(parent.resolve((Path) event.context()));
+                        if (entry != null) {
+                            entry.stale = true;
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    watched.remove(parent);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //the cache was closed
+        }
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); //required of every JVM
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static final class Entry {
+
+        private final Path file;
+        private final Path source;
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+        private ByteBuffer mapped;
+        private volatile List<Token> tokens;
+        private volatile boolean stale = false;
+
+        private Entry(Path file, Path source, long size, long modified, byte[] hash, List<Token> tokens) {
+            this.file = file;
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.tokens = tokens;
+        }
+
+        /**
+         * Maps an entry file and reads its header, returning null if it isn't
+         * a valid entry (such as one written by another version).
+         */
+        private static Entry load(Path file) throws IOException {
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            try {
+                if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                    return null;
+                }
+                byte[] path = new byte[mapped.getInt()];
+                mapped.get(path);
+                long size = mapped.getLong();
+                long modified = mapped.getLong();
+                byte[] hash = new byte[32];
+                mapped.get(hash);
+                Entry entry = new Entry(file, Paths.get(new String(path, StandardCharsets.UTF_8)), size, modified, hash, null);
+                entry.mapped = mapped.slice();
+                return entry;
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        private List<Token> tokens() {
+            List<Token> tokens = this.tokens;
+            if (tokens == null) {
+                synchronized (this) {
+                    if (this.tokens == null) {
+                        this.tokens = Collections.unmodifiableList(TokenCodec.read(mapped.duplicate()));
+                        mapped = null;
+                    }
+                    tokens = this.tokens;
+                }
+            }
+            return tokens;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package plc.project;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary format for a list of tokens, shared by {@link TokenCache} entries
+ * and token dumps. All values are big-endian:
+ *
+ * <pre>
+ * tokens ::= count:int token*
+ * token  ::= type:byte index:int byteIndex:int literalLength:int literal:utf8
+ * </pre>
+ */
+final class TokenCodec {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private TokenCodec() {}
+
+    static void write(DataOutput out, List<Token> tokens) throws IOException {
+        out.writeInt(tokens.size());
+        for (Token token : tokens) {
+            byte[] literal = token.getLiteral().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(token.getType().ordinal());
+            out.writeInt(token.getIndex());
+            out.writeInt(token.getByteIndex());
+            out.writeInt(literal.length);
+            out.write(literal);
+        }
+    }
+
+    /**
+     * Reads tokens from the buffer's position, advancing it past them.
+     */
+    static List<Token> read(ByteBuffer in) {
+        int count = in.getInt();
+        List<Token> tokens = new ArrayList<>(count);
+        byte[] literal = new byte[64];
+        for (int i = 0; i < count; i++) {
+            Token.Type type = TYPES[in.get()];
+            int index = in.getInt();
+            int byteIndex = in.getInt();
+            int length = in.getInt();
+            if (length > literal.length) {
+                literal = new byte[Math.max(length, literal.length * 2)];
+            }
+            in.get(literal, 0, length);
+            tokens.add(new Token(type, new String(literal, 0, length, StandardCharsets.UTF_8), index, byteIndex));
+        }
+        return tokens;
+    }
+
+}
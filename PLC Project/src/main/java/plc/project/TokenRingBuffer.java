@@ -0,0 +1,242 @@
+package plc.project;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A bounded single-producer, single-consumer queue of tokens, used to lex on
+ * one thread while another consumes the tokens, so lexing and consuming a
+ * large input take about as long as the slower of the two rather than both.
+ *
+ * Tokens are stored as type, offset and length in preallocated primitive
+ * slots. The producer publishes them in batches with an ordered write of its
+ * sequence, and the consumer frees slots in the same way, so the only
+ * synchronization is one release store per batch on each side. When the
+ * buffer is full or empty, the waiting side idles with its
+ * {@link WaitStrategy}.
+ *
+ * A {@link ParseException} (or any other exception) thrown by the lexer is
+ * carried over and rethrown by the consumer's {@link #next()} once it has
+ * consumed every token lexed before it. The consumer reads literals through
+ * its own {@link Utf8CharSequence#duplicate()} of a byte input, since the
+ * producer's view is moving at the same time.
+ */
+public final class TokenRingBuffer implements AutoCloseable {
+
+    /**
+     * How a thread waits for the other side of the buffer.
+     */
+    public enum WaitStrategy {
+        /**
+         * Busy-spins, for the lowest latency when each thread has a core.
+         */
+        SPIN {
+            @Override
+            void idle() {
+            }
+        },
+        /**
+         * Yields to other threads between checks.
+         */
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+        /**
+         * Parks for a few microseconds between checks, using the least CPU.
+         */
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        };
+
+        abstract void idle();
+    }
+
+    private static final long PARK_NANOS = 10_000;
+    private static final int BATCH = 64;
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private final int mask;
+    private final byte[] types;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final WaitStrategy wait;
+    private final Sequence produced = new Sequence();
+    private final Sequence consumed = new Sequence();
+    private volatile boolean finished = false;
+    private volatile boolean closed = false;
+    //written by the producer before finished
+    private Throwable error;
+    //consumer state
+    private long read = 0;
+    private long limit = 0;
+    private int current = -1;
+
+    private TokenRingBuffer(CharSequence source, int capacity, WaitStrategy wait) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2 * BATCH) - 1) << 1;
+        this.source = source;
+        this.mask = size - 1;
+        this.types = new byte[size];
+        this.offsets = new int[size];
+        this.lengths = new int[size];
+        this.wait = wait;
+    }
+
+    /**
+     * Starts lexing on the executor into a new buffer holding at least
+     * capacity tokens, and returns the buffer for the calling thread to
+     * consume.
+     */
+    public static TokenRingBuffer lex(Lexer lexer, int capacity, WaitStrategy wait, Executor executor) {
+        TokenRingBuffer buffer = new TokenRingBuffer(Utf8CharSequence.duplicate(lexer.input()), capacity, wait);
+        executor.execute(() -> buffer.produce(lexer));
+        return buffer;
+    }
+
+    private void produce(Lexer lexer) {
+        Producer producer = new Producer();
+        try {
+            lexer.lex(producer);
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            produced.lazySet(producer.sequence);
+            finished = true;
+        }
+    }
+
+    /**
+     * Advances to the next token, waiting for it to be lexed, and returns
+     * false at the end of the input. If lexing failed, the exception is
+     * rethrown after the tokens before it.
+     */
+    public boolean next() {
+        if (read == limit) {
+            consumed.lazySet(read);
+            if (!await()) {
+                return false;
+            }
+        }
+        current = (int) (read++ & mask);
+        return true;
+    }
+
+    private boolean await() {
+        while ((limit = produced.get()) == read) {
+            if (finished) {
+                if ((limit = produced.get()) != read) {
+                    return true;
+                } else if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                } else if (error instanceof Error) {
+                    throw (Error) error;
+                }
+                return false;
+            } else if (closed) {
+                throw new CancellationException("The buffer is closed.");
+            }
+            wait.idle();
+        }
+        return true;
+    }
+
+    public Token.Type type() {
+        return TYPES[types[current()]];
+    }
+
+    public int offset() {
+        return offsets[current()];
+    }
+
+    public int length() {
+        return lengths[current()];
+    }
+
+    /**
+     * Materializes the current token.
+     */
+    public Token token() {
+        int offset = offset();
+        return new Token(type(), source.subSequence(offset, offset + lengths[current]).toString(), offset);
+    }
+
+    /**
+     * Passes every remaining token to the sink.
+     */
+    public void drainTo(Consumer<? super Token> sink) {
+        while (next()) {
+            sink.accept(token());
+        }
+    }
+
+    private int current() {
+        if (current == -1) {
+            throw new IllegalStateException("next() has not been called.");
+        }
+        return current;
+    }
+
+    /**
+     * Stops the producer if it is waiting for space, for a consumer which
+     * doesn't need the rest of the tokens. Waiting for more tokens after this
+     * throws a {@link CancellationException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * The producer's state, kept apart from the consumer's fields.
+     */
+    private final class Producer implements Consumer<Token> {
+
+        private long sequence = 0;
+        private long free = 0;
+
+        @Override
+        public void accept(Token token) {
+            if (sequence == free) {
+                //publish what's written so far, so the consumer can make room
+                produced.lazySet(sequence);
+                while (sequence == (free = consumed.get() + mask + 1)) {
+                    if (closed) {
+                        throw new CancellationException("The buffer is closed.");
+                    }
+                    wait.idle();
+                }
+            }
+            int slot = (int) (sequence & mask);
+            types[slot] = (byte) token.getType().ordinal();
+            offsets[slot] = token.getIndex();
+            lengths[slot] = token.getLiteral().length();
+            if ((++sequence & (BATCH - 1)) == 0) {
+                produced.lazySet(sequence);
+            }
+        }
+
+    }
+
+    /**
+     * A sequence padded so the producer's and consumer's sequences don't
+     * share a cache line.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+    }
+
+}
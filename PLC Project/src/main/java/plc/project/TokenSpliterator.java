@@ -0,0 +1,105 @@
+package plc.project;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the tokens of an input, used by
+ * {@link Lexer#stream()}. Tokens are lexed one at a time as they are
+ * advanced, so short-circuiting operations stop lexing early.
+ *
+ * Splitting divides the remaining input at a line ending near its middle.
+ * Line endings are always whitespace between tokens (no token may contain
+ * one), so each half lexes to exactly the tokens the whole input would, with
+ * the same indices. If both halves contain an error, a parallel stream may
+ * report either one. The split off half reads the input through its own
+ * {@link Utf8CharSequence#duplicate()}, since the halves may be lexed on
+ * different threads.
+ */
+final class TokenSpliterator implements Spliterator<Token> {
+
+    /**
+     * The smallest remaining input worth splitting.
+     */
+    private static final int MIN_SPLIT = 1 << 12;
+
+    private final LexerSpec spec;
+    private final CharSequence input;
+    private final int end;
+    private Lexer lexer;
+
+    TokenSpliterator(LexerSpec spec, CharSequence input, Lexer lexer, int end) {
+        this.spec = spec;
+        this.input = input;
+        this.lexer = lexer;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Token> action) {
+        Token token = lexer.lexNext();
+        if (token == null) {
+            return false;
+        }
+        action.accept(token);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Token> action) {
+        lexer.lexAll(action);
+    }
+
+    @Override
+    public Spliterator<Token> trySplit() {
+        int start = lexer.position();
+        //a split would index its tokens and record its trivia in a lexer
+        //the caller can't see, and would start the token count and timeout over
+        if (end - start < MIN_SPLIT || spec.isIdentifierIndexed() || spec.isTriviaPreserved()
+                || spec.getLimits().getMaxTokenCount() != Integer.MAX_VALUE || spec.getLimits().getTimeoutNanos() != 0) {
+            return null;
+        }
+        int split = lineEnding(start + (end - start) / 2);
+        if (split <= start) {
+            return null;
+        }
+        CharSequence view = Utf8CharSequence.duplicate(input);
+        Spliterator<Token> prefix = new TokenSpliterator(spec, view, new Lexer(spec, view, start, split), split);
+        lexer = new Lexer(spec, input, split, end);
+        return prefix;
+    }
+
+    /**
+     * Returns the index of the first line ending at or after middle, or if
+     * there isn't one the last line ending before it (or -1 if neither).
+     */
+    private int lineEnding(int middle) {
+        for (int i = middle; i < end; i++) {
+            if (isLineEnding(input.charAt(i))) {
+                return i;
+            }
+        }
+        for (int i = middle - 1; i > lexer.position(); i--) {
+            if (isLineEnding(input.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLineEnding(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    @Override
+    public long estimateSize() {
+        //roughly one token per four characters of source
+        return (end - lexer.position()) / 4;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+}
@@ -0,0 +1,135 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The whitespace skipped by a {@link Lexer} (see
+ * {@link LexerSpec#withTrivia(boolean)}), recorded as the run of whitespace
+ * before each token plus the trailing run after the last one, so the source
+ * can be reconstructed exactly from the tokens with
+ * {@link #reconstruct(List)}.
+ *
+ * Whitespace is always ASCII, so the runs are stored back to back as bytes in
+ * one pool, and each run is just its offset in the pool, its length and the
+ * number of line endings in it (counting {@code \r\n} once). A run starts at
+ * {@code token.getIndex() - getLength(i)} in the source.
+ */
+public final class Trivia {
+
+    private byte[] pool = new byte[256];
+    private int poolLength = 0;
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private int[] newlines = new int[64];
+    private int count = 0;
+    private int runStart = 0;
+    private int runNewlines = 0;
+    private boolean finished = false;
+
+    Trivia() {}
+
+    /**
+     * Adds a whitespace char to the current run.
+     */
+    void add(char c, boolean lineEnding) {
+        if (poolLength == pool.length) {
+            pool = Arrays.copyOf(pool, pool.length * 2);
+        }
+        pool[poolLength++] = (byte) c;
+        if (lineEnding) {
+            runNewlines++;
+        }
+    }
+
+    /**
+     * Ends the current run as the leading trivia of the next token.
+     */
+    void endRun() {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            newlines = Arrays.copyOf(newlines, count * 2);
+        }
+        offsets[count] = runStart;
+        lengths[count] = poolLength - runStart;
+        newlines[count] = runNewlines;
+        count++;
+        runStart = poolLength;
+        runNewlines = 0;
+    }
+
+    /**
+     * Ends the trailing run at the end of the input.
+     */
+    void finish() {
+        if (!finished) {
+            endRun();
+            finished = true;
+        }
+    }
+
+    /**
+     * Returns the number of runs: one per token, plus the trailing run once
+     * the whole input has been lexed.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns true if the whole input has been lexed, so the last run is the
+     * trailing trivia.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getLength(int run) {
+        return lengths[checkIndex(run)];
+    }
+
+    public int getNewlineCount(int run) {
+        return newlines[checkIndex(run)];
+    }
+
+    /**
+     * Returns the whitespace of the run.
+     */
+    public String getText(int run) {
+        StringBuilder builder = new StringBuilder(getLength(run));
+        append(builder, run);
+        return builder.toString();
+    }
+
+    /**
+     * Returns the source the tokens were lexed from, interleaving them with
+     * the recorded whitespace.
+     */
+    public String reconstruct(List<Token> tokens) {
+        if (!finished || tokens.size() != count - 1) {
+            throw new IllegalArgumentException("Expected the " + (count - 1) + " tokens of a finished input.");
+        }
+        StringBuilder builder = new StringBuilder(poolLength + tokens.size() * 4);
+        for (int i = 0; i < tokens.size(); i++) {
+            append(builder, i);
+            builder.append(tokens.get(i).getLiteral());
+        }
+        append(builder, count - 1);
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, int run) {
+        for (int i = offsets[run]; i < offsets[run] + lengths[run]; i++) {
+            builder.append((char) pool[i]);
+        }
+    }
+
+    private int checkIndex(int run) {
+        if (run < 0 || run >= count) {
+            throw new IndexOutOfBoundsException("Run " + run + " of " + count);
+        }
+        return run;
+    }
+
+}
@@ -0,0 +1,262 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only view of UTF-8 encoded bytes as UTF-16 chars, which lets the
+ * lexer run directly on {@code byte[]} or {@link ByteBuffer} input without
+ * decoding it into a {@link String} first.
+ *
+ * Chars are decoded on demand through a cursor which walks the bytes, so
+ * sequential access (which is all the {@link Lexer.CharStream} does) costs one
+ * byte read per ASCII char. Only {@link #toString()}, used for token
+ * literals, decodes a range of bytes into a String. The view also maps char
+ * indices back to byte offsets for {@link Token#getByteIndex()}.
+ *
+ * Char indices match {@code new String(bytes, UTF_8)} for well-formed input.
+ * A malformed byte decodes as a single U+FFFD, in {@link #toString()} as well
+ * as {@link #charAt(int)}, so a literal always has the length of its token.
+ *
+ * A view is not thread-safe, since even reading moves its cursor. Threads
+ * sharing the bytes should each read through their own {@link #duplicate()}.
+ */
+public final class Utf8CharSequence implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int from;
+    private final int to;
+    private final int length;
+
+    //the cursor is always at the start of a code point
+    private int cursorChar = 0;
+    private int cursorByte;
+
+    public Utf8CharSequence(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a view of the remaining bytes of the buffer. The buffer's
+     * position and limit are not modified.
+     */
+    public Utf8CharSequence(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.limit(), -1);
+    }
+
+    private Utf8CharSequence(ByteBuffer bytes, int from, int to, int length) {
+        this.bytes = bytes;
+        this.from = from;
+        this.to = to;
+        this.cursorByte = from;
+        this.length = length >= 0 ? length : count(bytes, from, to);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+        }
+        seek(index);
+        byte b = bytes.get(cursorByte);
+        return b >= 0 ? (char) b : decodeChar(cursorByte, index != cursorChar);
+    }
+
+    /**
+     * Returns a view of the same bytes with its own cursor, for reading them
+     * on another thread.
+     */
+    public Utf8CharSequence duplicate() {
+        return new Utf8CharSequence(bytes, from, to, length);
+    }
+
+    /**
+     * Returns input for reading on another thread, which is a duplicate if it
+     * is a view and otherwise input itself.
+     */
+    static CharSequence duplicate(CharSequence input) {
+        return input instanceof Utf8CharSequence ? ((Utf8CharSequence) input).duplicate() : input;
+    }
+
+    /**
+     * Returns the offset of the given char index from the start of the bytes.
+     * The index of the second char of a surrogate pair maps to the start of
+     * its code point.
+     */
+    public int byteOffset(int index) {
+        if (index == length) {
+            return to - from;
+        }
+        seek(index);
+        return cursorByte - from;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + "), length: " + length);
+        }
+        if (splitsCodePoint(start) || splitsCodePoint(end)) {
+            //only possible for a lone surrogate lexed as an operator
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                builder.append(charAt(i));
+            }
+            return builder.toString();
+        }
+        int startByte = from + byteOffset(start);
+        return new Utf8CharSequence(bytes, startByte, from + byteOffset(end), end - start);
+    }
+
+    /**
+     * Decodes the whole view, walking the bytes in the same way as {@link
+     * #charAt(int)} rather than with a {@link java.nio.charset.Charset},
+     * which may replace a malformed sequence with fewer U+FFFDs. The cursor
+     * isn't used.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        int i = 0;
+        for (int position = from; position < to; ) {
+            byte b = bytes.get(position);
+            if (b >= 0) {
+                chars[i++] = (char) b;
+                position++;
+            } else {
+                chars[i++] = decodeChar(position, false);
+                if (chars(position) == 2) {
+                    chars[i++] = decodeChar(position, true);
+                }
+                position += width(position);
+            }
+        }
+        return new String(chars);
+    }
+
+    private boolean splitsCodePoint(int index) {
+        if (index == length) {
+            return false;
+        }
+        seek(index);
+        return index != cursorChar;
+    }
+
+    /**
+     * Moves the cursor to the code point containing the char at index.
+     */
+    private void seek(int index) {
+        while (index >= cursorChar + chars(cursorByte)) {
+            cursorChar += chars(cursorByte);
+            cursorByte += width(cursorByte);
+        }
+        while (index < cursorChar) {
+            cursorByte = previous(cursorByte);
+            cursorChar -= chars(cursorByte);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the code point at the given position,
+     * which is 1 for a malformed byte.
+     */
+    private int width(int position) {
+        int width = expected(bytes.get(position));
+        if (position + width > to) {
+            return 1;
+        }
+        for (int i = 1; i < width; i++) {
+            if ((bytes.get(position + i) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        return width;
+    }
+
+    private int chars(int position) {
+        return width(position) == 4 ? 2 : 1;
+    }
+
+    /**
+     * Returns the start of the code point ending at the given position. A
+     * code point is only multi-byte if its lead byte is followed by exactly
+     * the continuation bytes it expects, so this always agrees with walking
+     * forward with {@link #width(int)}.
+     */
+    private int previous(int position) {
+        if ((bytes.get(position - 1) & 0xC0) != 0x80) {
+            return position - 1;
+        }
+        for (int lead = position - 2; lead >= Math.max(from, position - 4); lead--) {
+            if ((bytes.get(lead) & 0xC0) != 0x80) {
+                return lead + width(lead) == position ? lead : position - 1;
+            }
+        }
+        return position - 1;
+    }
+
+    /**
+     * Returns the first char (or the second, if low) of the code point at the
+     * given position.
+     */
+    private char decodeChar(int position, boolean low) {
+        int codePoint = decode(position);
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return (char) codePoint;
+        }
+        return low ? Character.lowSurrogate(codePoint) : Character.highSurrogate(codePoint);
+    }
+
+    private int decode(int position) {
+        int width = width(position);
+        int b = bytes.get(position) & 0xFF;
+        switch (width) {
+            case 2:
+                return (b & 0x1F) << 6 | bytes.get(position + 1) & 0x3F;
+            case 3:
+                return (b & 0x0F) << 12 | (bytes.get(position + 1) & 0x3F) << 6 | bytes.get(position + 2) & 0x3F;
+            case 4:
+                return (b & 0x07) << 18 | (bytes.get(position + 1) & 0x3F) << 12
+                        | (bytes.get(position + 2) & 0x3F) << 6 | bytes.get(position + 3) & 0x3F;
+            default:
+                return b < 0x80 ? b : 0xFFFD;
+        }
+    }
+
+    private static int expected(byte lead) {
+        if (lead >= 0) {
+            return 1;
+        } else if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        } else if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        } else if ((lead & 0xF8) == 0xF0) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Counts the chars in the given range without decoding them.
+     */
+    private static int count(ByteBuffer bytes, int from, int to) {
+        Utf8CharSequence walker = new Utf8CharSequence(bytes, from, to, 0);
+        int count = 0;
+        for (int position = from; position < to; ) {
+            byte b = bytes.get(position);
+            if (b >= 0) {
+                count++;
+                position++;
+            } else {
+                count += walker.chars(position);
+                position += walker.width(position);
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,87 @@
+package plc.homework;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Contains JUnit tests for {@link RegexCache}.
+ */
+public class RegexCacheTests {
+
+    @Test
+    public void testHits() {
+        RegexCache cache = new RegexCache(1024);
+        Assertions.assertTrue(cache.matches(Regex.EMAIL, "thelegend27@gmail.com"));
+        Assertions.assertTrue(cache.matches(Regex.EMAIL, "thelegend27@gmail.com"));
+        Assertions.assertFalse(cache.matches(Regex.NUMBER, "thelegend27@gmail.com"));
+        Assertions.assertFalse(cache.matches(Regex.NUMBER, "thelegend27@gmail.com"));
+        Assertions.assertEquals(2, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+        Assertions.assertEquals(0.5, cache.hitRate());
+        Assertions.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        RegexCache cache = new RegexCache(64);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(cache.matches(Regex.NUMBER, String.valueOf(i)));
+        }
+        Assertions.assertTrue(cache.size() <= 64);
+        Assertions.assertEquals(1000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void testUnevenSize() {
+        //1000 isn't a multiple of the stripe count, but none of it is lost
+        RegexCache cache = new RegexCache(1000);
+        for (int i = 0; i < 100_000; i++) {
+            cache.matches(Regex.NUMBER, String.valueOf(i));
+        }
+        Assertions.assertEquals(1000, cache.size());
+        Assertions.assertEquals(100_000 - 1000, cache.getEvictions());
+    }
+
+    @Test
+    public void testTtl() throws InterruptedException {
+        RegexCache cache = new RegexCache(64, Duration.ofMillis(1));
+        cache.matches(Regex.NUMBER, "1");
+        Thread.sleep(5);
+        cache.matches(Regex.NUMBER, "1");
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        RegexCache cache = new RegexCache(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        String input = i % 3 == 0 ? "x" + i % 100 + "@ufl.edu" : (i % 2 == 0 ? "-" : "") + i % 100;
+                        Assertions.assertEquals(Regex.EMAIL.matcher(input).matches(), cache.matches(Regex.EMAIL, input));
+                        Assertions.assertEquals(Regex.NUMBER.matcher(input).matches(), cache.matches(Regex.NUMBER, input));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(80000, cache.getHits() + cache.getMisses());
+        Assertions.assertTrue(cache.hitRate() > 0.9);
+    }
+
+}
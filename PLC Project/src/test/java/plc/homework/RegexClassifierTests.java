@@ -0,0 +1,115 @@
+package plc.homework;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Checks {@link RegexClassifier} against {@link Pattern} on the same inputs.
+ */
+public class RegexClassifierTests {
+
+    private static final Pattern[] REGEX = {Regex.EMAIL, Regex.EVEN_STRINGS, Regex.INTEGER_LIST, Regex.NUMBER, Regex.STRING};
+
+    @ParameterizedTest
+    @MethodSource
+    public void testRegex(String test, String input) {
+        Assertions.assertEquals(expected(REGEX, input), RegexClassifier.REGEX.classify(input));
+    }
+
+    public static Stream<Arguments> testRegex() {
+        return Stream.of(
+                Arguments.of("Email", "thelegend27@gmail.com"),
+                Arguments.of("Missing Domain Dot", "missingdot@gmailcom"),
+                Arguments.of("Even String", "automobile"),
+                Arguments.of("Even Email", "abcdefg@ab.com"),
+                Arguments.of("Odd String", "i<3pancakes9!"),
+                Arguments.of("Integer List", "[1,2,3]"),
+                Arguments.of("Empty List", "[]"),
+                Arguments.of("Number", "+1.9"),
+                Arguments.of("Trailing Decimal", "2."),
+                Arguments.of("String", "\"a\""),
+                Arguments.of("Empty String", "\"\""),
+                Arguments.of("Empty", ""),
+                Arguments.of("Newline", "12345\n6789"),
+                Arguments.of("Trailing Newline", "1234567890\n"),
+                Arguments.of("Surrogate Pair", "\"\ud83d\ude00\""),
+                Arguments.of("Unpaired Surrogate", "\"\ud83d\"")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    public void testPattern(String test, String pattern, String input) {
+        Pattern[] patterns = {Pattern.compile(pattern)};
+        Assertions.assertEquals(expected(patterns, input), RegexClassifier.of(patterns).classify(input));
+    }
+
+    public static Stream<Arguments> testPattern() {
+        return Stream.of(
+                Arguments.of("Alternation", "ab|cd|", "cd"),
+                Arguments.of("Non-Capturing Group", "(?:ab)+", "ababab"),
+                Arguments.of("Bounded Repetition", "a{2,4}b{3}", "aaabbb"),
+                Arguments.of("Unbounded Repetition", "a{2,}", "a"),
+                Arguments.of("Lazy", "a+?b*?", "aab"),
+                Arguments.of("Negated Class", "[^a-c\\d]+", "xyz"),
+                Arguments.of("Negated Class Digit", "[^a-c\\d]+", "xy1"),
+                Arguments.of("Escapes", "\\w+\\s\\W\\.", "a_1 !."),
+                Arguments.of("Dot Newline", "a.b", "a\nb"),
+                Arguments.of("Dot Next Line", "a.b", "a\u0085b"),
+                Arguments.of("Start Anchor", "a*^b", "b"),
+                Arguments.of("Middle Start Anchor", "a*^b", "ab"),
+                Arguments.of("End Anchor", "(ba|c)*$", "bac"),
+                Arguments.of("Nested Empty Loop", "(a*)*b", "aab")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    public void testUnsupported(String test, Pattern pattern) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RegexClassifier.of(pattern));
+    }
+
+    public static Stream<Arguments> testUnsupported() {
+        return Stream.of(
+                Arguments.of("Possessive", Pattern.compile("a*+b")),
+                Arguments.of("Lookahead", Pattern.compile("(?=a)a")),
+                Arguments.of("Backreference", Pattern.compile("(a)\\1")),
+                Arguments.of("Flags", Pattern.compile("a", Pattern.CASE_INSENSITIVE)),
+                Arguments.of("Inline Flags", Pattern.compile("(?i)a")),
+                Arguments.of("Intersection", Pattern.compile("[a-z&&[^b]]")),
+                Arguments.of("End Anchor Before Input", Pattern.compile("a$\\n"))
+        );
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(0);
+        String alphabet = "ab09.,@[]\"+- \n\u00e9";
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            Assertions.assertEquals(expected(REGEX, input.toString()), RegexClassifier.REGEX.classify(input), input::toString);
+        }
+    }
+
+    private static int expected(Pattern[] patterns, String input) {
+        int mask = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(input).matches()) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+}
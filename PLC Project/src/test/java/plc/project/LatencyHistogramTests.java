@@ -0,0 +1,78 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LatencyHistogramTests {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 15, 16, 17, 100, 1000, 123456789, Long.MAX_VALUE})
+    void testBucketBounds(long value) {
+        int bucket = LatencyHistogram.bucket(value);
+        Assertions.assertTrue(value <= LatencyHistogram.upperBound(bucket));
+        Assertions.assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+        Assertions.assertTrue(LatencyHistogram.upperBound(bucket) - value <= value / 16);
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assertions.assertEquals(10000, snapshot.getCount());
+        Assertions.assertEquals(5_000_000, snapshot.getP50(), 5_000_000 / 16.0);
+        Assertions.assertEquals(9_900_000, snapshot.getP99(), 9_900_000 / 16.0);
+        Assertions.assertEquals(9_990_000, snapshot.getP999(), 9_990_000 / 16.0);
+        Assertions.assertEquals(10_000_000, snapshot.getMax());
+        Assertions.assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    @Test
+    void testMerge() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(1000);
+        Assertions.assertEquals(2, first.snapshot().merge(second.snapshot()).getCount());
+        first.merge(second);
+        Assertions.assertEquals(2, first.snapshot().getCount());
+        Assertions.assertEquals(1000, first.snapshot().getMax());
+    }
+
+    @Test
+    void testRecorder() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        LexerSpec spec = LexerSpec.DEFAULT.withLatencyRecorder(recorder);
+        new Lexer(spec, "LET x = 5;").lex();
+        Assertions.assertThrows(ParseException.class, () -> new Lexer(spec, "\"unterminated").lex());
+        String large = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(5000, null);
+        new Lexer(spec, large).lex();
+        Assertions.assertEquals(1, recorder.getHistogram(0, LatencyRecorder.Outcome.SUCCESS).snapshot().getCount());
+        Assertions.assertEquals(1, recorder.getHistogram(0, LatencyRecorder.Outcome.PARSE_EXCEPTION).snapshot().getCount());
+        Assertions.assertEquals(1, recorder.getHistogram(LatencyRecorder.sizeBucket(large.length()),
+                LatencyRecorder.Outcome.SUCCESS).snapshot().getCount());
+        Assertions.assertEquals(2, LatencyRecorder.sizeBucket(large.length()));
+    }
+
+    @Test
+    void testRecorderShadow() {
+        //only the caller's lex is recorded, not verifying or minimizing the mismatch
+        LatencyRecorder recorder = new LatencyRecorder();
+        LexerSpec fast = LexerSpec.DEFAULT.withOperators(OperatorTable.of("&&")).withLatencyRecorder(recorder);
+        List<ShadowLexer.Mismatch> mismatches = new ArrayList<>();
+        ShadowLexer lexer = new ShadowLexer(fast, LexerSpec.REFERENCE.withLatencyRecorder(recorder),
+                1.0, 1, Runnable::run, mismatches::add);
+        lexer.lex("LET x = a && b;");
+        Assertions.assertEquals(1, mismatches.size());
+        Assertions.assertEquals(1, recorder.getHistogram(0, LatencyRecorder.Outcome.SUCCESS).snapshot().getCount());
+        Assertions.assertEquals(0, recorder.getHistogram(0, LatencyRecorder.Outcome.PARSE_EXCEPTION).snapshot().getCount());
+    }
+
+}
@@ -0,0 +1,110 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class LexerCliTests {
+
+    @TempDir
+    Path directory;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void testCounts() throws Exception {
+        write("a.plc", "LET x = 5;");
+        write("nested/b.plc", "print(x);");
+        write("c.txt", "ignored");
+        Assertions.assertEquals(0, run("--threads", "2", "--glob", "*.plc", directory.toString()));
+        String output = out();
+        Assertions.assertTrue(output.contains("a.plc\t5"), output);
+        Assertions.assertTrue(output.contains(directory.relativize(directory.resolve("nested/b.plc")) + "\t5"), output);
+        Assertions.assertFalse(output.contains("c.txt"), output);
+        Assertions.assertTrue(output.contains("2 files, 10 tokens, 0 errors"), output);
+        Assertions.assertEquals("", err());
+    }
+
+    @Test
+    void testDump() throws Exception {
+        Path source = write("nested/a.plc", "LET x = \"caf\u00e9\";");
+        Path dump = directory.resolve("dump");
+        Assertions.assertEquals(0, run("--dump", dump.toString(), directory.resolve("nested").toString()));
+        Path tokens = dump.resolve("a.plc.tokens");
+        Assertions.assertTrue(Files.isRegularFile(tokens));
+        Assertions.assertEquals(new Lexer(Files.readAllBytes(source)).lex(),
+                TokenCodec.read(ByteBuffer.wrap(Files.readAllBytes(tokens))));
+    }
+
+    @Test
+    void testLexError() throws Exception {
+        write("a.plc", "LET x = 5;");
+        write("b.plc", "LET x = 5;\nLET y = \"unterminated;");
+        Assertions.assertEquals(1, run(directory.toString()));
+        Assertions.assertTrue(out().contains("1 files, 5 tokens, 1 errors"), out());
+        Assertions.assertTrue(err().startsWith("b.plc:2:"), err());
+    }
+
+    @Test
+    void testMissingRoot() throws Exception {
+        Assertions.assertEquals(1, run(directory.resolve("missing").toString()));
+        Assertions.assertTrue(err().contains("Unable to read"), err());
+        Assertions.assertTrue(out().contains("0 files, 0 tokens, 1 errors"), out());
+    }
+
+    @Test
+    void testUnreadableFile() throws Exception {
+        Path source = write("a.plc", "LET x = 5;");
+        Assumptions.assumeTrue(Files.getFileStore(source).supportsFileAttributeView("posix"));
+        Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("---------"));
+        //permissions don't apply to root
+        Assumptions.assumeFalse(Files.isReadable(source));
+        Assertions.assertEquals(1, run(directory.toString()));
+        Assertions.assertTrue(err().startsWith("a.plc:Unable to read"), err());
+    }
+
+    @Test
+    void testInvalidArguments() throws Exception {
+        Assertions.assertEquals(2, run());
+        Assertions.assertTrue(err().contains("Usage: LexerCli"), err());
+        Assertions.assertEquals(2, run("--threads", "0", directory.toString()));
+        Assertions.assertEquals(2, run("--threads", "many", directory.toString()));
+        Assertions.assertEquals(2, run(directory.toString(), directory.toString()));
+        Assertions.assertEquals(2, run("--unknown", directory.toString()));
+        Assertions.assertEquals(2, run(directory.toString(), "--glob"));
+        Assertions.assertEquals("", out());
+    }
+
+    private int run(String... args) throws Exception {
+        try (PrintStream out = new PrintStream(this.out, true, "UTF-8");
+             PrintStream err = new PrintStream(this.err, true, "UTF-8")) {
+            return LexerCli.run(args, out, err);
+        }
+    }
+
+    private String out() {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String err() {
+        return new String(err.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
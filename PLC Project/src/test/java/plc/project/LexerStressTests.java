@@ -0,0 +1,175 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lexes programs from {@link ProgramGenerator} and checks that every engine
+ * agrees with the generator and with each other. The defaults are small so
+ * this runs with the normal test suite; larger runs are configured through
+ * system properties, for example:
+ *
+ * <pre>gradle test --tests plc.project.LexerStressTests -Dstress.bytes=1073741824 -Dstress.heap=4096</pre>
+ *
+ *  - {@code stress.seed}: generator seed (default 0)
+ *  - {@code stress.bytes}: total characters lexed by the throughput test
+ *  - {@code stress.chunk}: characters per lexer input (inputs over 2GB are
+ *    lexed as a sequence of chunks)
+ *  - {@code stress.seconds}: time budget for the throughput test
+ *  - {@code stress.heap}: peak heap budget in megabytes
+ */
+public class LexerStressTests {
+
+    private static final long SEED = Long.getLong("stress.seed", 0);
+    private static final long BYTES = Long.getLong("stress.bytes", 1 << 18);
+    private static final int CHUNK = Integer.getInteger("stress.chunk", 1 << 16);
+    private static final long SECONDS = Long.getLong("stress.seconds", 60);
+    private static final long HEAP = Long.getLong("stress.heap", 512);
+
+    /**
+     * Each way of driving the lexer, all of which should produce identical
+     * tokens and exceptions.
+     */
+    static final Map<String, Function<String, List<Token>>> ENGINES = new LinkedHashMap<>();
+    private static final ExecutorService PRODUCERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stress-producer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        ENGINES.put("lex", input -> new Lexer(input).lex());
+        ENGINES.put("reference", input -> new Lexer(LexerSpec.REFERENCE, input).lex());
+        ENGINES.put("utf8", input -> new Lexer(input.getBytes(StandardCharsets.UTF_8)).lex());
+        ENGINES.put("parallel", input -> new Lexer(input).stream().parallel().collect(Collectors.toList()));
+        ENGINES.put("utf8-parallel", input -> new Lexer(input.getBytes(StandardCharsets.UTF_8)).stream().parallel()
+                .collect(Collectors.toList()));
+        ENGINES.put("offheap", input -> {
+            try (OffHeapTokenStore store = new OffHeapTokenStore()) {
+                new Lexer(input).lex(store);
+                List<Token> tokens = new ArrayList<>();
+                for (int i = 0; i < store.size(); i++) {
+                    tokens.add(store.get(i, input));
+                }
+                return tokens;
+            }
+        });
+        ENGINES.put("pipeline", input -> {
+            List<Token> tokens = new ArrayList<>();
+            TokenRingBuffer.lex(new Lexer(input), 1 << 12, TokenRingBuffer.WaitStrategy.YIELD, PRODUCERS).drainTo(tokens::add);
+            return tokens;
+        });
+        ENGINES.put("utf8-pipeline", input -> {
+            List<Token> tokens = new ArrayList<>();
+            TokenRingBuffer.lex(new Lexer(input.getBytes(StandardCharsets.UTF_8)), 1 << 12,
+                    TokenRingBuffer.WaitStrategy.YIELD, PRODUCERS).drainTo(tokens::add);
+            return tokens;
+        });
+        LexerSession session = LexerSpec.DEFAULT.newSession();
+        ENGINES.put("session", input -> {
+            List<Token> tokens = new ArrayList<>(session.lex(input));
+            if (!session.getDiagnostics().isEmpty()) {
+                throw session.getDiagnostics().get(0);
+            }
+            return tokens;
+        });
+    }
+
+    @ParameterizedTest
+    @MethodSource("mixes")
+    void testValid(String test, int[] mix) {
+        ProgramGenerator generator = new ProgramGenerator(SEED, mix);
+        for (int size = 16; size <= 1 << 14; size *= 4) {
+            List<Token> expected = new ArrayList<>();
+            String input = generator.valid(size, expected);
+            for (Map.Entry<String, Function<String, List<Token>>> engine : ENGINES.entrySet()) {
+                Assertions.assertEquals(expected, engine.getValue().apply(input), engine.getKey());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("mixes")
+    void testInvalid(String test, int[] mix) {
+        ProgramGenerator generator = new ProgramGenerator(SEED, mix);
+        for (int i = 0; i < 50; i++) {
+            String input = generator.invalid(256);
+            Integer expected = null;
+            for (Map.Entry<String, Function<String, List<Token>>> engine : ENGINES.entrySet()) {
+                ParseException exception = Assertions.assertThrows(ParseException.class,
+                        () -> engine.getValue().apply(input), engine.getKey());
+                if (expected == null) {
+                    expected = exception.getIndex();
+                }
+                Assertions.assertEquals(expected.intValue(), exception.getIndex(), engine.getKey() + ": " + input);
+            }
+        }
+    }
+
+    private static Stream<Arguments> mixes() {
+        return Stream.of(
+                Arguments.of("Source", ProgramGenerator.SOURCE_MIX),
+                Arguments.of("String", ProgramGenerator.STRING_MIX)
+        );
+    }
+
+    @Test
+    void testThroughput() {
+        for (Map.Entry<String, Function<String, List<Token>>> engine : ENGINES.entrySet()) {
+            ProgramGenerator generator = new ProgramGenerator(SEED, ProgramGenerator.SOURCE_MIX);
+            resetPeakHeap();
+            long start = System.nanoTime();
+            long tokens = Assertions.assertTimeout(Duration.ofSeconds(SECONDS), () -> {
+                long count = 0;
+                for (long lexed = 0; lexed < BYTES; lexed += CHUNK) {
+                    String input = generator.valid((int) Math.min(CHUNK, BYTES - lexed), null);
+                    count += engine.getValue().apply(input).size();
+                }
+                return count;
+            }, engine.getKey());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long peak = peakHeap() >> 20;
+            System.out.printf("%-10s %,d chars, %,d tokens in %.2fs: %.2f MB/s, %,.0f tokens/s, peak heap %,d MB%n",
+                    engine.getKey(), BYTES, tokens, seconds, BYTES / seconds / (1 << 20), tokens / seconds, peak);
+            Assertions.assertTrue(peak <= HEAP, engine.getKey() + " peak heap " + peak + "MB exceeds " + HEAP + "MB");
+        }
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+}
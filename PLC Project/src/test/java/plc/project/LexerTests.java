@@ -6,8 +6,25 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -102,6 +119,31 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testStringRuns(String test, String input, int maxLength) {
+        //the fast path must agree with the reference loop, including its errors
+        LexerLimits limits = LexerLimits.NONE.withMaxTokenLength(maxLength);
+        ShadowLexer.Outcome expected = ShadowLexer.Outcome.of(LexerSpec.REFERENCE.withLimits(limits), input);
+        Assertions.assertEquals(expected, ShadowLexer.Outcome.of(LexerSpec.DEFAULT.withLimits(limits), input));
+    }
+
+    private static Stream<Arguments> testStringRuns() {
+        return Stream.of(
+                Arguments.of("Plain", "x = \"a plain string\";", Integer.MAX_VALUE),
+                Arguments.of("Escapes", "\"a\\tb\\\"c\\\\\"", Integer.MAX_VALUE),
+                Arguments.of("Leading Backslash", "\"\\\\\"", Integer.MAX_VALUE),
+                Arguments.of("Backslash After Escape", "\"a\\n\\q\"", Integer.MAX_VALUE),
+                Arguments.of("Invalid Escape", "\"ab\\q\"", Integer.MAX_VALUE),
+                Arguments.of("Newline", "\"ab\ncd\"", Integer.MAX_VALUE),
+                Arguments.of("Unterminated", "\"abc", Integer.MAX_VALUE),
+                Arguments.of("Unicode", "\"caf\u00e9 \\u\"", Integer.MAX_VALUE),
+                Arguments.of("Length Limit", "\"abcdefgh\"", 4),
+                Arguments.of("Length Limit Escape", "\"ab\\ncdef\"", 4),
+                Arguments.of("Length Limit Exact", "\"ab\"", 4)
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testOperator(String test, String input, boolean success) {
@@ -118,6 +160,40 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testOperatorTable(String test, String input, List<String> expected) {
+        OperatorTable operators = OperatorTable.of("&&", "||", "->", "::", "...", ">", ">>", ">>=", "=", "==");
+        List<Token> tokens = new Lexer(LexerSpec.DEFAULT.withOperators(operators), input).lex();
+        Assertions.assertEquals(expected, tokens.stream().map(Token::getLiteral).collect(Collectors.toList()));
+    }
+
+    private static Stream<Arguments> testOperatorTable() {
+        return Stream.of(
+                Arguments.of("Logical", "a&&b||c", Arrays.asList("a", "&&", "b", "||", "c")),
+                Arguments.of("Longest Match", ">>=>>>", Arrays.asList(">>=", ">>", ">")),
+                Arguments.of("Backtrack", "..x...", Arrays.asList(".", ".", "x", "...")),
+                Arguments.of("Not In Table", "<=&", Arrays.asList("<", "=", "&")),
+                Arguments.of("Arrow", "(x)->y::z", Arrays.asList("(", "x", ")", "->", "y", "::", "z"))
+        );
+    }
+
+    @Test
+    void testOperatorTableWhitespace() {
+        for (String operator : Arrays.asList("a b", "\t", "a\nb", "a\nb\nc", "a\r\nb")) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> OperatorTable.of(operator), operator);
+        }
+    }
+
+    @Test
+    void testOperatorLiteralShared() {
+        List<Token> tokens = new Lexer("x <= y <= z").lex();
+        Assertions.assertSame(tokens.get(1).getLiteral(), tokens.get(3).getLiteral());
+        tokens = new Lexer("f(a); g(b);").lex();
+        Assertions.assertSame(tokens.get(1).getLiteral(), tokens.get(6).getLiteral());
+        Assertions.assertSame(tokens.get(4).getLiteral(), tokens.get(9).getLiteral());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testExamples(String test, String input, List<Token> expected) {
@@ -155,6 +231,412 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8(String test, String input) {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        List<Token> expected = new Lexer(input).lex();
+        List<Token> actual = new Lexer(bytes).lex();
+        Assertions.assertEquals(expected, actual);
+        for (Token token : actual) {
+            //the second half of a surrogate pair maps to the start of its code point
+            int start = Character.isLowSurrogate(input.charAt(token.getIndex())) ? token.getIndex() - 1 : token.getIndex();
+            int byteIndex = input.substring(0, start).getBytes(StandardCharsets.UTF_8).length;
+            Assertions.assertEquals(byteIndex, token.getByteIndex(), token.toString());
+        }
+    }
+
+    private static Stream<Arguments> testUtf8() {
+        return Stream.of(
+                Arguments.of("Ascii", "LET x = 5;"),
+                Arguments.of("String", "print(\"h\u00e9llo \u20ac\");"),
+                Arguments.of("Character", "x = '\u00e9' + '\u20ac';"),
+                Arguments.of("Supplementary", "\"\ud83d\ude00\" \ud83d\ude00 x")
+        );
+    }
+
+    @Test
+    void testUtf8Exception() {
+        byte[] bytes = "\"\u00e9\u00e9\u00e9".getBytes(StandardCharsets.UTF_8);
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(bytes).lex());
+        Assertions.assertEquals(4, exception.getIndex());
+    }
+
+    @Test
+    void testUtf8Malformed() {
+        //a truncated sequence is one U+FFFD per byte, in the literal as well
+        byte[] bytes = {'"', (byte) 0xE2, (byte) 0x82, '"', ' ', 'x'};
+        Utf8CharSequence input = new Utf8CharSequence(bytes);
+        List<Token> tokens = new Lexer(bytes).lex();
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.STRING, "\"\ufffd\ufffd\"", 0),
+                new Token(Token.Type.IDENTIFIER, "x", 5)
+        ), tokens);
+        Assertions.assertEquals("\"\ufffd\ufffd\" x", input.toString());
+        Assertions.assertEquals(tokens, CompactTokenList.of(input, tokens));
+    }
+
+    @Test
+    void testStream() {
+        List<Token> expected = new ArrayList<>();
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, expected);
+        Assertions.assertEquals(expected, new Lexer(input).stream().collect(Collectors.toList()));
+        Assertions.assertEquals(expected, new Lexer(input).stream().parallel().collect(Collectors.toList()));
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(expected, new Lexer(bytes).stream().parallel().collect(Collectors.toList()));
+        }
+        Assertions.assertEquals(expected.stream().filter(t -> t.getType() == Token.Type.IDENTIFIER).count(),
+                new Lexer(input).stream().parallel().filter(t -> t.getType() == Token.Type.IDENTIFIER).count());
+    }
+
+    @Test
+    void testStreamShortCircuit() {
+        Stream<Token> tokens = new Lexer("x = 1;\n\"unterminated").stream();
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "x", 0), tokens.findFirst().get());
+        Assertions.assertThrows(ParseException.class,
+                () -> new Lexer("x = 1;\n\"unterminated").stream().anyMatch(t -> t.getLiteral().equals("y")));
+    }
+
+    @Test
+    void testOffHeapTokenStore() {
+        List<Token> expected = new ArrayList<>();
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 19, expected);
+        try (OffHeapTokenStore store = new OffHeapTokenStore()) {
+            new Lexer(input).lex(store);
+            Assertions.assertEquals(expected.size(), store.size());
+            Assertions.assertTrue(store.chunkCount() > 1);
+            OffHeapTokenStore.Cursor cursor = store.cursor();
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertTrue(cursor.next());
+                Assertions.assertEquals(expected.get(i).getIndex(), cursor.offset());
+                Assertions.assertEquals(expected.get(i), store.get(i, input));
+            }
+            Assertions.assertFalse(cursor.next());
+        }
+
+        //closing frees the chunks right away
+        BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct")).findFirst().get();
+        OffHeapTokenStore store = new OffHeapTokenStore();
+        new Lexer(input).lex(store);
+        long chunkBytes = (long) store.chunkCount() * OffHeapTokenStore.CHUNK_RECORDS * OffHeapTokenStore.RECORD_BYTES;
+        long used = direct.getMemoryUsed();
+        store.close();
+        Assertions.assertTrue(direct.getMemoryUsed() <= used - chunkBytes);
+        Assertions.assertThrows(IllegalStateException.class, store::size);
+        store.close();
+    }
+
+    @Test
+    void testCompactTokenList() {
+        List<Token> expected = new ArrayList<>();
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, expected);
+        CompactTokenList tokens = CompactTokenList.of(input, new Lexer(input).lex());
+        Assertions.assertEquals(expected, tokens);
+        Assertions.assertEquals(expected.get(1000), tokens.get(1000));
+        List<Token> iterated = new ArrayList<>();
+        tokens.forEach(iterated::add);
+        Assertions.assertEquals(expected, iterated);
+        Iterator<Token> iterator = tokens.iterator();
+        for (Token token : expected) {
+            Assertions.assertEquals(token, iterator.next());
+        }
+        Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+        Assertions.assertTrue(tokens.getEncodedSize() < 4 * tokens.size());
+        CompactTokenList.Builder builder = new CompactTokenList.Builder();
+        new Lexer(input).lex(builder);
+        Assertions.assertEquals(expected, builder.build(input));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tokens.get(tokens.size()));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> tokens.add(expected.get(0)));
+    }
+
+    @Test
+    void testIdentifierIndex() {
+        LexerSpec spec = LexerSpec.DEFAULT.withIdentifierIndex(true);
+        String input = "LET x = f(x, y);\nxs = x;\nprint(y);";
+        Lexer lexer = new Lexer(spec, input);
+        List<Token> tokens = lexer.lex();
+        IdentifierIndex index = lexer.getIdentifierIndex();
+        Assertions.assertEquals(tokens.size(), index.getTokenCount());
+        Assertions.assertArrayEquals(new int[] {1, 5, 12}, index.lookup("x"));
+        Assertions.assertArrayEquals(new int[0], index.lookup("z"));
+        Assertions.assertEquals(Arrays.asList("x", "xs"), new ArrayList<>(index.prefix("x").keySet()));
+        Assertions.assertThrows(IllegalStateException.class, () -> new Lexer(input).getIdentifierIndex());
+
+        //replace "xs = x;" (tokens 10 to 13) with "z = x + x;"
+        index.update(10, 4, IdentifierIndex.of(new Lexer("z = x + x;").lex()));
+        IdentifierIndex expected = IdentifierIndex.of(new Lexer("LET x = f(x, y);\nz = x + x;\nprint(y);").lex());
+        Assertions.assertEquals(expected.getTokenCount(), index.getTokenCount());
+        Assertions.assertEquals(expected.getSymbolCount(), index.getSymbolCount());
+        for (String symbol : Arrays.asList("LET", "x", "f", "y", "z", "xs", "print")) {
+            Assertions.assertArrayEquals(expected.lookup(symbol), index.lookup(symbol), symbol);
+        }
+
+        IdentifierIndex merged = IdentifierIndex.of(tokens.subList(0, 10));
+        merged.merge(IdentifierIndex.of(tokens.subList(10, tokens.size())), 10);
+        IdentifierIndex whole = IdentifierIndex.of(tokens);
+        Assertions.assertEquals(whole.getTokenCount(), merged.getTokenCount());
+        for (String symbol : whole.prefix("").keySet()) {
+            Assertions.assertArrayEquals(whole.lookup(symbol), merged.lookup(symbol), symbol);
+        }
+
+        //a parallel stream doesn't split, so the index covers every token
+        List<Token> generated = new ArrayList<>();
+        String program = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, generated);
+        Lexer streamed = new Lexer(spec, program);
+        Assertions.assertEquals(generated, streamed.stream().parallel().collect(Collectors.toList()));
+        Assertions.assertEquals(generated.size(), streamed.getIdentifierIndex().getTokenCount());
+    }
+
+    @Test
+    void testTokenRingBuffer() {
+        List<Token> expected = new ArrayList<>();
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, expected);
+        String invalid = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).invalid(1 << 16);
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(invalid).lex());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (TokenRingBuffer.WaitStrategy wait : TokenRingBuffer.WaitStrategy.values()) {
+                List<Token> tokens = new ArrayList<>();
+                TokenRingBuffer.lex(new Lexer(input), 128, wait, executor).drainTo(tokens::add);
+                Assertions.assertEquals(expected, tokens, wait.name());
+                tokens.clear();
+                TokenRingBuffer.lex(new Lexer(input.getBytes(StandardCharsets.UTF_8)), 128, wait, executor).drainTo(tokens::add);
+                Assertions.assertEquals(expected, tokens, wait.name());
+                TokenRingBuffer buffer = TokenRingBuffer.lex(new Lexer(invalid), 128, wait, executor);
+                ParseException carried = Assertions.assertThrows(ParseException.class, () -> buffer.drainTo(t -> {}));
+                Assertions.assertEquals(exception.getIndex(), carried.getIndex(), wait.name());
+            }
+            //a closed buffer releases a producer waiting for space
+            TokenRingBuffer buffer = TokenRingBuffer.lex(new Lexer(input), 128, TokenRingBuffer.WaitStrategy.PARK, executor);
+            Assertions.assertTrue(buffer.next());
+            Assertions.assertEquals(expected.get(0), buffer.token());
+            buffer.close();
+            Assertions.assertThrows(CancellationException.class, () -> buffer.drainTo(t -> {}));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testTrivia() {
+        LexerSpec spec = LexerSpec.DEFAULT.withTrivia(true);
+        String input = "\tLET x = 5;\r\n\r\n  print(x);\r \n";
+        Lexer lexer = new Lexer(spec, input);
+        List<Token> tokens = lexer.lex();
+        Trivia trivia = lexer.getTrivia();
+        Assertions.assertEquals(tokens.size() + 1, trivia.size());
+        Assertions.assertEquals("\t", trivia.getText(0));
+        Assertions.assertEquals(2, trivia.getNewlineCount(5));
+        Assertions.assertEquals(6, trivia.getLength(5));
+        Assertions.assertEquals(2, trivia.getNewlineCount(tokens.size()));
+        Assertions.assertEquals(input, trivia.reconstruct(tokens));
+        Assertions.assertThrows(IllegalStateException.class, () -> new Lexer(input).getTrivia());
+
+        String program = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, null);
+        Lexer generated = new Lexer(spec, program);
+        Assertions.assertEquals(program, generated.getTrivia().reconstruct(generated.lex()));
+        Lexer streamed = new Lexer(spec, program);
+        List<Token> parallel = streamed.stream().parallel().collect(Collectors.toList());
+        Assertions.assertEquals(program, streamed.getTrivia().reconstruct(parallel));
+    }
+
+    @Test
+    void testSourceBundle() throws IOException {
+        List<String> sources = Arrays.asList("LET x = 5;", "", "print(\"unterminated);\nx", "x <= 'y'", "\"trailing");
+        SourceBundle bundle = SourceBundle.lex(LexerSpec.DEFAULT, sources);
+        Assertions.assertEquals(5, bundle.getSourceCount());
+        for (int i = 0; i < sources.size(); i++) {
+            Assertions.assertEquals(sources.get(i), bundle.getSource(i).toString());
+            LexerSession session = LexerSpec.DEFAULT.newSession();
+            Assertions.assertEquals(session.lex(sources.get(i)), bundle.getTokens(i));
+            ParseException diagnostic = bundle.getDiagnostic(i);
+            Assertions.assertEquals(session.getDiagnostics().isEmpty(), diagnostic == null);
+            if (diagnostic != null) {
+                Assertions.assertEquals(session.getDiagnostics().get(0).getIndex(), diagnostic.getIndex());
+            }
+        }
+        Assertions.assertEquals(3, bundle.getSourceId(bundle.getFirstToken(3)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bundle.write(new DataOutputStream(bytes));
+        SourceBundle copy = SourceBundle.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(bundle.getTokenCount(), copy.getTokenCount());
+        for (int i = 0; i < sources.size(); i++) {
+            Assertions.assertEquals(bundle.getTokens(i), copy.getTokens(i));
+            Assertions.assertEquals(bundle.getDiagnostic(i) == null, copy.getDiagnostic(i) == null);
+        }
+
+        //the token count carries over the errors, which each lex 3 tokens
+        List<String> failing = Arrays.asList("a b \"x", "c d \"y", "e");
+        LexerSpec limited = LexerSpec.DEFAULT.withLimits(LexerLimits.NONE.withMaxTokenCount(6));
+        Assertions.assertEquals(4, SourceBundle.lex(limited, failing.subList(0, 2)).getTokenCount());
+        LimitExceededException exception = Assertions.assertThrows(LimitExceededException.class,
+                () -> SourceBundle.lex(limited, failing));
+        Assertions.assertEquals(LimitExceededException.Limit.TOKEN_COUNT, exception.getLimit());
+    }
+
+    @Test
+    void testShadowLexer() {
+        List<ShadowLexer.Mismatch> mismatches = new ArrayList<>();
+        LexerSpec fast = LexerSpec.DEFAULT.withOperators(OperatorTable.of("<", "<=", "&&"));
+        ShadowLexer lexer = new ShadowLexer(fast, LexerSpec.REFERENCE, 1.0, 1, Runnable::run, mismatches::add);
+        Assertions.assertEquals(new Lexer("x <= 1;").lex(), lexer.lex("x <= 1;"));
+        Assertions.assertThrows(ParseException.class, () -> lexer.lex("x = \"unterminated"));
+        Assertions.assertTrue(mismatches.isEmpty());
+        lexer.lex("LET x = a && b;");
+        Assertions.assertEquals(3, lexer.getVerified());
+        Assertions.assertEquals(1, mismatches.size());
+        Assertions.assertEquals("&&", mismatches.get(0).getMinimized());
+        ShadowLexer.Outcome outcome = ShadowLexer.Outcome.of(fast, "x <= 1;");
+        Assertions.assertEquals(ShadowLexer.Outcome.of(LexerSpec.REFERENCE, "x <= 1;"), outcome);
+        Assertions.assertEquals(ShadowLexer.Outcome.of(LexerSpec.REFERENCE, "x <= 1;").hashCode(), outcome.hashCode());
+
+        //a limit stops the fast spec, but isn't a mismatch
+        LexerSpec limited = fast.withLimits(LexerLimits.NONE.withMaxTokenCount(2));
+        ShadowLexer shadow = new ShadowLexer(limited, LexerSpec.REFERENCE, 1.0, 1, Runnable::run, mismatches::add);
+        Assertions.assertThrows(LimitExceededException.class, () -> shadow.lex("x = 1;"));
+        Assertions.assertEquals(new Lexer("x;").lex(), shadow.lex("x;"));
+        Assertions.assertEquals(1, shadow.getVerified());
+        Assertions.assertEquals(1, mismatches.size());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLimits(String test, LexerLimits limits, String input, LimitExceededException.Limit limit, int index) {
+        LimitExceededException exception = Assertions.assertThrows(LimitExceededException.class,
+                () -> new Lexer(LexerSpec.DEFAULT.withLimits(limits), input).lex());
+        Assertions.assertEquals(limit, exception.getLimit());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testLimits() {
+        return Stream.of(
+                Arguments.of("Input Length", LexerLimits.NONE.withMaxInputLength(5), "LET x = 5;",
+                        LimitExceededException.Limit.INPUT_LENGTH, 5),
+                Arguments.of("String Length", LexerLimits.NONE.withMaxTokenLength(4), "x = \"abcdef\";",
+                        LimitExceededException.Limit.TOKEN_LENGTH, 9),
+                Arguments.of("Identifier Length", LexerLimits.NONE.withMaxTokenLength(4), "abcdef",
+                        LimitExceededException.Limit.TOKEN_LENGTH, 5),
+                Arguments.of("Number Length", LexerLimits.NONE.withMaxTokenLength(4), "x = 123456;",
+                        LimitExceededException.Limit.TOKEN_LENGTH, 9),
+                Arguments.of("Decimal Length", LexerLimits.NONE.withMaxTokenLength(4), "x = 1.23456;",
+                        LimitExceededException.Limit.TOKEN_LENGTH, 9),
+                Arguments.of("Character Length", LexerLimits.NONE.withMaxTokenLength(2), "x = 'a';",
+                        LimitExceededException.Limit.TOKEN_LENGTH, 7),
+                Arguments.of("Token Count", LexerLimits.NONE.withMaxTokenCount(3), "LET x = 5;",
+                        LimitExceededException.Limit.TOKEN_COUNT, 8)
+        );
+    }
+
+    @Test
+    void testLimitsParallel() {
+        List<Token> expected = new ArrayList<>();
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 18, expected);
+        LexerSpec spec = LexerSpec.DEFAULT.withLimits(LexerLimits.NONE.withMaxTokenCount(expected.size() / 2));
+        LimitExceededException exception = Assertions.assertThrows(LimitExceededException.class,
+                () -> new Lexer(spec, input).stream().parallel().count());
+        Assertions.assertEquals(LimitExceededException.Limit.TOKEN_COUNT, exception.getLimit());
+        Assertions.assertEquals(expected.get(expected.size() / 2).getIndex(), exception.getIndex());
+        LexerSpec timed = LexerSpec.DEFAULT.withLimits(LexerLimits.NONE.withTimeout(Duration.ofNanos(1)));
+        exception = Assertions.assertThrows(LimitExceededException.class,
+                () -> new Lexer(timed, input).stream().parallel().count());
+        Assertions.assertEquals(LimitExceededException.Limit.TIMEOUT, exception.getLimit());
+    }
+
+    @Test
+    void testTimeout() {
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, null);
+        LexerSpec spec = LexerSpec.DEFAULT.withLimits(LexerLimits.NONE.withTimeout(Duration.ofNanos(1)));
+        LimitExceededException exception = Assertions.assertThrows(LimitExceededException.class,
+                () -> new Lexer(spec, input).lex());
+        Assertions.assertEquals(LimitExceededException.Limit.TIMEOUT, exception.getLimit());
+    }
+
+    @Test
+    void testInterrupted() {
+        String input = new ProgramGenerator(0, ProgramGenerator.SOURCE_MIX).valid(1 << 16, null);
+        Thread.currentThread().interrupt();
+        try {
+            LimitExceededException exception = Assertions.assertThrows(LimitExceededException.class,
+                    () -> new Lexer(input).lex());
+            Assertions.assertEquals(LimitExceededException.Limit.INTERRUPTED, exception.getLimit());
+            Assertions.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testSession() {
+        LexerSession session = LexerSpec.DEFAULT.newSession();
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.OPERATOR, "=", 2)
+        ), session.lex("x = \"unterminated"));
+        Assertions.assertEquals(17, session.getDiagnostics().get(0).getIndex());
+        Assertions.assertEquals(Arrays.asList(new Token(Token.Type.INTEGER, "1", 1)), session.lex("\n1"));
+        Assertions.assertTrue(session.getDiagnostics().isEmpty());
+        Assertions.assertEquals(2, session.getLineMap().getLine(1));
+
+        LexerSession limited = LexerSpec.DEFAULT.withLimits(LexerLimits.NONE.withMaxInputLength(3)).newSession();
+        Assertions.assertTrue(limited.lex("abcdef").isEmpty());
+        Assertions.assertEquals(LimitExceededException.Limit.INPUT_LENGTH,
+                ((LimitExceededException) limited.getDiagnostics().get(0)).getLimit());
+        Assertions.assertEquals(1, limited.getLineMap().getLine(5));
+    }
+
+    @Test
+    void testSharedSpec() throws Exception {
+        LexerSpec spec = LexerSpec.DEFAULT.withOperators(OperatorTable.of("&&", "||"));
+        String input = "a && b || 'c' <= \"d\" 1.5";
+        List<Token> expected = new Lexer(spec, input).lex();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> {
+                    LexerSession session = spec.newSession();
+                    for (int j = 0; j < 1000; j++) {
+                        if (!expected.equals(session.lex(input))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assertions.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testLineMap() {
+        Lexer lexer = new Lexer("LET x\n  = 5;\r\n\r\nprint(x)\r;");
+        List<Token> tokens = lexer.lex();
+        LineMap lines = lexer.getLineMap();
+        Assertions.assertEquals(5, lines.getLineCount());
+        Assertions.assertEquals(1, lines.getLine(tokens.get(1)));
+        Assertions.assertEquals(5, lines.getColumn(tokens.get(1)));
+        Assertions.assertEquals(2, lines.getLine(tokens.get(2)));
+        Assertions.assertEquals(3, lines.getColumn(tokens.get(2)));
+        Assertions.assertEquals(4, lines.getLine(tokens.get(5)));
+        Assertions.assertEquals(1, lines.getColumn(tokens.get(5)));
+        Assertions.assertEquals(5, lines.getLine(tokens.get(9)));
+        Assertions.assertEquals(1, lines.getColumn(tokens.get(9)));
+    }
+
+    @Test
+    void testLineMapException() {
+        Lexer lexer = new Lexer("x = 1;\ny = \"unterminated");
+        ParseException exception = Assertions.assertThrows(ParseException.class, lexer::lex);
+        Assertions.assertEquals(2, lexer.getLineMap().getLine(exception));
+        Assertions.assertEquals(18, lexer.getLineMap().getColumn(exception));
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -0,0 +1,176 @@
+package plc.project;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic programs for the lexer from a seed, so any failure seen
+ * in {@link LexerStressTests} can be reproduced by re-running with the same
+ * seed and size.
+ *
+ * Programs are a sequence of tokens separated by whitespace. The relative
+ * frequency of each {@link Token.Type} is given by the weights passed to the
+ * constructor (indexed by ordinal). Invalid programs are valid programs with a
+ * single malformed token (unterminated string, invalid escape, trailing
+ * decimal point, ...) spliced in at a random point.
+ */
+final class ProgramGenerator {
+
+    private static final String IDENTIFIER_START = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz_";
+    private static final String IDENTIFIER_PART = IDENTIFIER_START + "0123456789-";
+    private static final String PLAIN = IDENTIFIER_PART + " !#$%&()*+,./:;<=>?@[]^`{|}~";
+    private static final String ESCAPES = "bnrt'\"\\";
+    private static final String[] OPERATORS = {
+            "<", "<=", ">", ">=", "!", "!=", "=", "==",
+            "(", ")", ";", ",", "+", "-", "*", "/", ".", "{", "}", "[", "]"
+    };
+    private static final String[] WHITESPACE = {" ", " ", " ", "\n", "\t", "\r\n", "\n    "};
+    private static final String[] INVALID = {
+            "\"unterminated", "\"invalid\\escape\"", "'abc'", "''", "1.", "'\\d'"
+    };
+
+    /**
+     * A mix dominated by identifiers and operators, which is roughly the
+     * shape of hand-written source.
+     */
+    static final int[] SOURCE_MIX = {30, 10, 3, 2, 5, 50};
+
+    /**
+     * A mix dominated by string literals, which stresses {@link Lexer#lexString()}.
+     */
+    static final int[] STRING_MIX = {5, 5, 5, 5, 70, 10};
+
+    private final Random random;
+    private final int[] weights;
+    private final int total;
+
+    ProgramGenerator(long seed, int[] weights) {
+        if (weights.length != Token.Type.values().length) {
+            throw new IllegalArgumentException("Expected one weight per token type.");
+        }
+        this.random = new Random(seed);
+        this.weights = weights.clone();
+        int sum = 0;
+        for (int weight : weights) {
+            sum += weight;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Returns a valid program of approximately {@code size} characters. If
+     * {@code expected} is non-null, the tokens the lexer should produce are
+     * added to it.
+     */
+    String valid(int size, List<Token> expected) {
+        StringBuilder builder = new StringBuilder(size + 64);
+        generate(builder, size, expected);
+        return builder.toString();
+    }
+
+    /**
+     * Returns a program of approximately {@code size} characters which
+     * contains exactly one malformed token.
+     */
+    String invalid(int size) {
+        StringBuilder builder = new StringBuilder(size + 64);
+        generate(builder, random.nextInt(Math.max(size, 1)), null);
+        //the newline stops an unterminated string from reaching a later quote
+        builder.append(' ').append(INVALID[random.nextInt(INVALID.length)]).append('\n');
+        generate(builder, Math.max(size - builder.length(), 0), null);
+        return builder.toString();
+    }
+
+    private void generate(StringBuilder builder, int size, List<Token> expected) {
+        int limit = builder.length() + size;
+        while (builder.length() < limit) {
+            int start = builder.length();
+            Token.Type type = nextType();
+            appendToken(builder, type);
+            if (expected != null) {
+                expected.add(new Token(type, builder.substring(start), start));
+            }
+            builder.append(WHITESPACE[random.nextInt(WHITESPACE.length)]);
+        }
+    }
+
+    private Token.Type nextType() {
+        int roll = random.nextInt(total);
+        for (Token.Type type : Token.Type.values()) {
+            roll -= weights[type.ordinal()];
+            if (roll < 0) {
+                return type;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private void appendToken(StringBuilder builder, Token.Type type) {
+        switch (type) {
+            case IDENTIFIER:
+                builder.append(pick(IDENTIFIER_START));
+                for (int i = random.nextInt(12); i > 0; i--) {
+                    builder.append(pick(IDENTIFIER_PART));
+                }
+                break;
+            case INTEGER:
+                appendSign(builder);
+                appendDigits(builder);
+                break;
+            case DECIMAL:
+                appendSign(builder);
+                appendDigits(builder);
+                builder.append('.');
+                appendDigits(builder);
+                break;
+            case CHARACTER:
+                builder.append('\'');
+                appendCharacter(builder);
+                builder.append('\'');
+                break;
+            case STRING:
+                //lexString only treats a backslash as an escape when it follows
+                //a plain character, so the first character is always plain
+                builder.append('"');
+                for (int i = random.nextInt(40); i > 0; i--) {
+                    builder.append(pick(PLAIN));
+                    if (random.nextInt(8) == 0) {
+                        builder.append('\\').append(pick(ESCAPES));
+                    }
+                }
+                builder.append('"');
+                break;
+            case OPERATOR:
+                builder.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                break;
+        }
+    }
+
+    private void appendSign(StringBuilder builder) {
+        int roll = random.nextInt(8);
+        if (roll == 0) {
+            builder.append('+');
+        } else if (roll == 1) {
+            builder.append('-');
+        }
+    }
+
+    private void appendDigits(StringBuilder builder) {
+        for (int i = 1 + random.nextInt(8); i > 0; i--) {
+            builder.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+
+    private void appendCharacter(StringBuilder builder) {
+        if (random.nextInt(8) == 0) {
+            builder.append('\\').append(pick(ESCAPES));
+        } else {
+            builder.append(pick(PLAIN));
+        }
+    }
+
+    private char pick(String chars) {
+        return chars.charAt(random.nextInt(chars.length()));
+    }
+
+}
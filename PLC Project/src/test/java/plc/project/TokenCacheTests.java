@@ -0,0 +1,141 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TokenCacheTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testHit() throws IOException {
+        Path source = write("a.plc", "LET x = \"caf\u00e9\";");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            List<Token> expected = new Lexer(Files.readAllBytes(source)).lex();
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    void testRestart() throws IOException {
+        Path source = write("a.plc", "LET x = 5;\nprint(x);");
+        List<Token> expected;
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            expected = cache.get(source);
+        }
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(0, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testTouched() throws IOException {
+        Path source = write("a.plc", "LET x = 5;");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            List<Token> expected = cache.get(source);
+            Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 5000));
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testModifiedUnchanged() throws IOException {
+        //rewriting the same content is revalidated by its hash, keeping the entry
+        Path source = write("a.plc", "LET x = 5;");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            List<Token> expected = cache.get(source);
+            long modified = Files.getLastModifiedTime(source).toMillis();
+            write("a.plc", "LET x = 5;");
+            Files.setLastModifiedTime(source, FileTime.fromMillis(modified + 5000));
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(1, cache.getHits());
+        }
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            cache.get(source);
+            Assertions.assertEquals(0, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testModifiedSameSizeAndTime() throws IOException, InterruptedException {
+        //only the modify event tells this change apart, since the size and
+        //modification time are restored
+        Path source = write("a.plc", "LET x = 5;");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            cache.get(source);
+            FileTime modified = Files.getLastModifiedTime(source);
+            write("a.plc", "LET y = 6;");
+            Files.setLastModifiedTime(source, modified);
+            List<Token> expected = new Lexer("LET y = 6;").lex();
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (!cache.get(source).equals(expected) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(expected, cache.get(source));
+            Assertions.assertEquals(2, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testDeletedDirectory() throws IOException {
+        Files.createDirectories(directory.resolve("sub"));
+        Path source = write("sub/a.plc", "LET x = 5;");
+        Path other = write("b.plc", "LET y = 6;");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            cache.get(source);
+            cache.get(other);
+        }
+        Files.delete(source);
+        Files.delete(directory.resolve("sub"));
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            cache.get(other);
+            Assertions.assertEquals(0, cache.getMisses());
+        }
+        try (Stream<Path> files = Files.list(directory.resolve("cache"))) {
+            Assertions.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testChanged() throws IOException {
+        Path source = write("a.plc", "LET x = 5;");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            cache.get(source);
+            write("a.plc", "LET y = 6.0;");
+            Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 5000));
+            Assertions.assertEquals(new Lexer("LET y = 6.0;").lex(), cache.get(source));
+            Assertions.assertEquals(2, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testInvalid() throws IOException {
+        Path source = write("a.plc", "\"unterminated");
+        try (TokenCache cache = TokenCache.open(directory.resolve("cache"))) {
+            Assertions.assertThrows(ParseException.class, () -> cache.get(source));
+            Assertions.assertThrows(ParseException.class, () -> cache.get(source));
+            Assertions.assertEquals(2, cache.getMisses());
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}